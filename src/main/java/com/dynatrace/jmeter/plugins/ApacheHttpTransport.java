@@ -0,0 +1,128 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP/1.1 transport based on the Apache async client, which sends every request in flight on its own pooled
+ * connection. It is the default transport.
+ */
+class ApacheHttpTransport implements MetricTransport {
+	private static final Logger log = LoggerFactory.getLogger(ApacheHttpTransport.class);
+	private static final int MAX_THREADS = 5;
+	private final URI uri;
+	private final String token;
+	private final RequestConfig requestConfig;
+	private final CloseableHttpAsyncClient httpClient;
+
+	/**
+	 * @param maxConnections the size of the connection pool, should be the maximum number of requests in flight
+	 */
+	ApacheHttpTransport(URL url, String token, int maxConnections) {
+		try {
+			this.uri = url.toURI();
+			final IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+					.setIoThreadCount(Math.min(MAX_THREADS, maxConnections)).setConnectTimeout(CONNECT_TIMEOUT)
+					.setSoTimeout(SOCKET_TIMEOUT).build();
+			final PoolingNHttpClientConnectionManager connManager =
+					new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+			// the limits of the builder are ignored if it gets a connection manager, which defaults to 2 per route
+			connManager.setDefaultMaxPerRoute(maxConnections);
+			connManager.setMaxTotal(maxConnections);
+			this.httpClient = HttpAsyncClientBuilder.create().setConnectionManager(connManager)
+					.setUserAgent("ApacheJMeter 5").disableCookieManagement().disableConnectionState().build();
+		} catch (URISyntaxException | IOReactorException ex) {
+			throw new IllegalArgumentException("Cannot create HTTP client for " + url + ": " + ex.getMessage(), ex);
+		}
+		this.token = token;
+		this.requestConfig = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT).setSocketTimeout(SOCKET_TIMEOUT)
+				.setConnectionRequestTimeout(CONNECT_TIMEOUT).build();
+		httpClient.start();
+	}
+
+	@Override
+	public CompletableFuture<Response> send(byte[] body, String contentType) {
+		final CompletableFuture<Response> result = new CompletableFuture<>();
+		// every request gets its own instance, as multiple requests can be in flight at the same time
+		final HttpPost request = new HttpPost(uri);
+		request.setConfig(requestConfig);
+		if (StringUtils.isNotBlank(token)) {
+			request.setHeader("Authorization", "Api-Token " + token);
+		}
+		request.setEntity(new ByteArrayEntity(body, ContentType.parse(contentType)));
+		httpClient.execute(request, new FutureCallback<HttpResponse>() {
+			public void completed(HttpResponse response) {
+				final Header retryAfter = response.getFirstHeader("Retry-After");
+				result.complete(new Response(response.getStatusLine().getStatusCode(),
+						retryAfter == null ? null : retryAfter.getValue(), getBody(response)));
+			}
+
+			public void failed(Exception ex) {
+				result.completeExceptionally(ex);
+			}
+
+			public void cancelled() {
+				result.completeExceptionally(new CancellationException("Request was cancelled"));
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public void close() {
+		try {
+			httpClient.close();
+		} catch (IOException ex) {
+			log.debug("Failed to close the HTTP client: {}", ex.getMessage());
+		}
+	}
+
+	private static String getBody(HttpResponse response) {
+		try {
+			if (response.getEntity() != null) {
+				return EntityUtils.toString(response.getEntity());
+			}
+		} catch (Exception ex) {
+			// the body is only logged
+		}
+		return "";
+	}
+}
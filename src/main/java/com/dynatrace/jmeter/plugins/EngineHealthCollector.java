@@ -0,0 +1,223 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Collects the health of the JVM running the load generator, to detect if the JMeter engine itself is the bottleneck.
+ * <p>
+ * Only the platform MXBeans are used, so the collection is cheap enough to run on every flush. Counters (gc, allocation,
+ * safepoints) are reported as the difference to the previous collection.
+ */
+class EngineHealthCollector {
+	private static final Logger log = LoggerFactory.getLogger(EngineHealthCollector.class);
+	private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+	private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final DoubleSupplier processCpuLoad;
+	private final DoubleSupplier systemCpuLoad;
+	private final Object safepointBean;
+	private final Method safepointTimeMethod;
+	private Map<Long, Long> threadAllocations = new HashMap<>();
+	private long lastCollectNanos;
+	private long lastGcCount;
+	private long lastGcTime;
+	private long lastSafepointTime;
+
+	EngineHealthCollector() {
+		this(createProcessCpuLoad(ManagementFactory.getOperatingSystemMXBean()),
+				createSystemCpuLoad(ManagementFactory.getOperatingSystemMXBean()));
+	}
+
+	/**
+	 * @param processCpuLoad the CPU load of the process between 0 and 1, negative if not available
+	 * @param systemCpuLoad the CPU load of the host between 0 and 1, negative if not available
+	 */
+	EngineHealthCollector(DoubleSupplier processCpuLoad, DoubleSupplier systemCpuLoad) {
+		this.processCpuLoad = processCpuLoad;
+		this.systemCpuLoad = systemCpuLoad;
+		Object bean = null;
+		Method method = null;
+		// internal HotSpot bean, which is only accessible on Java 8. Newer versions print an illegal reflective access
+		// warning to the console or deny the access, so the safepoint time is not collected there.
+		if ("1.8".equals(System.getProperty("java.specification.version"))) {
+			try {
+				bean = Class.forName("sun.management.ManagementFactoryHelper").getMethod("getHotspotRuntimeMBean").invoke(null);
+				method = Class.forName("sun.management.HotspotRuntimeMBean").getMethod("getTotalSafepointTime");
+				method.invoke(bean);
+			} catch (Exception | LinkageError ex) {
+				log.debug("Safepoint time is not available: {}", ex.toString());
+				bean = null;
+				method = null;
+			}
+		}
+		safepointBean = bean;
+		safepointTimeMethod = method;
+
+		lastCollectNanos = System.nanoTime();
+		lastGcCount = getGcCount();
+		lastGcTime = getGcTime();
+		lastSafepointTime = getSafepointTime();
+		getAllocatedBytes();
+	}
+
+	/**
+	 * Collects the current values and passes them to the consumer together with their metric key.
+	 */
+	void collect(ObjDoubleConsumer<String> consumer) {
+		final long now = System.nanoTime();
+		final double elapsedSeconds = Math.max(1, now - lastCollectNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+		lastCollectNanos = now;
+
+		final long gcCount = getGcCount();
+		final long gcTime = getGcTime();
+		consumer.accept("jmeter.engine.gc.count", gcCount - lastGcCount);
+		consumer.accept("jmeter.engine.gc.time", gcTime - lastGcTime);
+		lastGcCount = gcCount;
+		lastGcTime = gcTime;
+
+		consumer.accept("jmeter.engine.heap.used", memoryBean.getHeapMemoryUsage().getUsed());
+		final long allocatedBytes = getAllocatedBytes();
+		if (allocatedBytes >= 0) {
+			consumer.accept("jmeter.engine.allocationrate", allocatedBytes / elapsedSeconds);
+		}
+
+		addCpuLoad(consumer, "jmeter.engine.cpu.process", processCpuLoad.getAsDouble());
+		addCpuLoad(consumer, "jmeter.engine.cpu.system", systemCpuLoad.getAsDouble());
+		consumer.accept("jmeter.engine.threads", threadBean.getThreadCount());
+
+		final long safepointTime = getSafepointTime();
+		if (safepointTime >= 0) {
+			consumer.accept("jmeter.engine.safepoint.time", safepointTime - lastSafepointTime);
+			lastSafepointTime = safepointTime;
+		}
+	}
+
+	private static void addCpuLoad(ObjDoubleConsumer<String> consumer, String metricKey, double load) {
+		// a negative value means that the load is not available (yet)
+		if (load >= 0) {
+			consumer.accept(metricKey, load * 100);
+		}
+	}
+
+	private static DoubleSupplier createProcessCpuLoad(OperatingSystemMXBean osBean) {
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) osBean)::getProcessCpuLoad;
+		}
+		return () -> -1;
+	}
+
+	/**
+	 * getSystemCpuLoad is deprecated since Java 14 in favor of getCpuLoad, so the available method is looked up.
+	 */
+	private static DoubleSupplier createSystemCpuLoad(OperatingSystemMXBean osBean) {
+		if (!(osBean instanceof com.sun.management.OperatingSystemMXBean)) {
+			return () -> -1;
+		}
+		Method method;
+		try {
+			method = com.sun.management.OperatingSystemMXBean.class.getMethod("getCpuLoad");
+		} catch (NoSuchMethodException ex) {
+			try {
+				method = com.sun.management.OperatingSystemMXBean.class.getMethod("getSystemCpuLoad");
+			} catch (NoSuchMethodException ex2) {
+				log.debug("System CPU load is not available: {}", ex2.toString());
+				return () -> -1;
+			}
+		}
+		final Method cpuLoadMethod = method;
+		return () -> {
+			try {
+				return (Double) cpuLoadMethod.invoke(osBean);
+			} catch (Exception ex) {
+				return -1;
+			}
+		};
+	}
+
+	private long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gcBean : gcBeans) {
+			count += Math.max(0, gcBean.getCollectionCount());
+		}
+		return count;
+	}
+
+	private long getGcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gcBean : gcBeans) {
+			time += Math.max(0, gcBean.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * @return the bytes allocated by all live threads since the previous call, or -1 if not supported
+	 */
+	private long getAllocatedBytes() {
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		final com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+		if (!sunThreadBean.isThreadAllocatedMemorySupported() || !sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+
+		final long[] threadIds = sunThreadBean.getAllThreadIds();
+		final long[] allocated = sunThreadBean.getThreadAllocatedBytes(threadIds);
+		final Map<Long, Long> currentAllocations = new HashMap<>(threadIds.length * 2);
+		long allocatedBytes = 0;
+		for (int i = 0; i < threadIds.length; i++) {
+			if (allocated[i] >= 0) {
+				currentAllocations.put(threadIds[i], allocated[i]);
+				// threads which have been started since the last call count with their whole allocation
+				allocatedBytes += allocated[i] - threadAllocations.getOrDefault(threadIds[i], 0L);
+			}
+		}
+		threadAllocations = currentAllocations;
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the total safepoint time in milliseconds, or -1 if not available
+	 */
+	private long getSafepointTime() {
+		if (safepointTimeMethod == null) {
+			return -1;
+		}
+		try {
+			return (Long) safepointTimeMethod.invoke(safepointBean);
+		} catch (Exception ex) {
+			return -1;
+		}
+	}
+}
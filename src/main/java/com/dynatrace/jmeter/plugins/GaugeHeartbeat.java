@@ -0,0 +1,63 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Suppresses gauges whose value has not changed since they were sent last,
+ * until the heartbeat (a configurable number of intervals) is reached.
+ */
+class GaugeHeartbeat {
+	private final int heartbeatIntervals;
+	private final Map<String, SentValue> sentValues = new HashMap<>();
+	private long interval;
+
+	/**
+	 * @param heartbeatIntervals the number of intervals after which an unchanged gauge is sent again, 1 sends every gauge
+	 */
+	GaugeHeartbeat(int heartbeatIntervals) {
+		this.heartbeatIntervals = heartbeatIntervals;
+	}
+
+	/**
+	 * @return true if the gauge has to be sent within the current interval
+	 */
+	boolean shouldSend(String key, double value) {
+		final SentValue sentValue = sentValues.get(key);
+		if (sentValue != null && sentValue.value == value && interval - sentValue.interval < heartbeatIntervals) {
+			return false;
+		}
+		sentValues.put(key, new SentValue(value, interval));
+		return true;
+	}
+
+	void nextInterval() {
+		interval++;
+	}
+
+	private static class SentValue {
+		private final double value;
+		private final long interval;
+
+		private SentValue(double value, long interval) {
+			this.value = value;
+			this.interval = interval;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side flow control for the metric ingest.
+ * <p>
+ * Requests are limited by a token bucket on lines/s and bytes/s, by a {@code Retry-After} of a throttled response and
+ * by the number of requests in flight. The allowed number of requests in flight is adapted with
+ * additive-increase/multiplicative-decrease: every successful fast response increases it by 1/limit (about one per
+ * round trip), a throttled or slow response halves it (at most once per round trip).
+ */
+class IngestRateController {
+	/**
+	 * Returned by {@link #tryAcquire}, if the request has to wait until another request is completed.
+	 */
+	static final long WAIT_FOR_COMPLETION = -1;
+	private static final long DEFAULT_RETRY_AFTER_MILLIS = 1_000;
+	private final double maxLinesPerSecond;
+	private final double maxBytesPerSecond;
+	private final int maxInFlight;
+	private final long latencyThresholdMillis;
+	private double lineTokens;
+	private double byteTokens;
+	private long lastRefillNanos;
+	private double inFlightLimit;
+	private int inFlight;
+	private long blockedUntilNanos;
+	private long lastDecreaseNanos;
+
+	/**
+	 * @param maxLinesPerSecond the maximum number of lines per second, 0 for no limit
+	 * @param maxBytesPerSecond the maximum number of bytes per second, 0 for no limit
+	 * @param maxInFlight the maximum number of requests in flight
+	 * @param latencyThresholdMillis responses slower than this reduce the number of requests in flight
+	 */
+	IngestRateController(double maxLinesPerSecond, double maxBytesPerSecond, int maxInFlight, long latencyThresholdMillis,
+			long nowNanos) {
+		this.maxLinesPerSecond = maxLinesPerSecond;
+		this.maxBytesPerSecond = maxBytesPerSecond;
+		this.maxInFlight = Math.max(1, maxInFlight);
+		this.latencyThresholdMillis = latencyThresholdMillis;
+		this.lineTokens = maxLinesPerSecond;
+		this.byteTokens = maxBytesPerSecond;
+		this.lastRefillNanos = nowNanos;
+		this.inFlightLimit = Math.min(2, this.maxInFlight);
+		this.blockedUntilNanos = nowNanos;
+		this.lastDecreaseNanos = nowNanos - TimeUnit.HOURS.toNanos(1);
+	}
+
+	/**
+	 * Tries to start a request. The tokens may become negative by a large request, following requests wait until
+	 * the tokens are positive again.
+	 *
+	 * @return 0 if the request can be sent, {@link #WAIT_FOR_COMPLETION} if too many requests are in flight,
+	 * otherwise the nanoseconds to wait
+	 */
+	synchronized long tryAcquire(int lines, int bytes, long nowNanos) {
+		if (nowNanos - blockedUntilNanos < 0) {
+			return blockedUntilNanos - nowNanos;
+		}
+		if (inFlight >= (int) inFlightLimit) {
+			return WAIT_FOR_COMPLETION;
+		}
+		refill(nowNanos);
+		final long waitNanos = Math.max(waitNanos(lineTokens, maxLinesPerSecond), waitNanos(byteTokens, maxBytesPerSecond));
+		if (waitNanos > 0) {
+			return waitNanos;
+		}
+		lineTokens -= lines;
+		byteTokens -= bytes;
+		inFlight++;
+		return 0;
+	}
+
+	/**
+	 * Completes a request with a response from the server.
+	 *
+	 * @param retryAfter the value of the {@code Retry-After} header or null
+	 */
+	synchronized void onResponse(int statusCode, long latencyMillis, String retryAfter, long nowNanos) {
+		inFlight--;
+		if (isThrottled(statusCode)) {
+			long retryAfterMillis = parseRetryAfter(retryAfter, System.currentTimeMillis());
+			if (retryAfterMillis < 0) {
+				retryAfterMillis = DEFAULT_RETRY_AFTER_MILLIS;
+			}
+			blockedUntilNanos = Math.max(blockedUntilNanos, nowNanos + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+			decrease(latencyMillis, nowNanos);
+		} else if (latencyMillis > latencyThresholdMillis) {
+			decrease(latencyMillis, nowNanos);
+		} else {
+			inFlightLimit = Math.min(maxInFlight, inFlightLimit + 1 / inFlightLimit);
+		}
+	}
+
+	/**
+	 * Completes a request which failed without a response.
+	 */
+	synchronized void onFailure(long latencyMillis, long nowNanos) {
+		inFlight--;
+		decrease(latencyMillis, nowNanos);
+	}
+
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	synchronized int getInFlightLimit() {
+		return (int) inFlightLimit;
+	}
+
+	static boolean isThrottled(int statusCode) {
+		return statusCode == 429 || statusCode == 503;
+	}
+
+	/**
+	 * @param retryAfter the delay in seconds or a HTTP date
+	 * @return the delay in milliseconds, or -1 if the value is missing or invalid
+	 */
+	static long parseRetryAfter(String retryAfter, long nowMillis) {
+		if (retryAfter == null || retryAfter.trim().isEmpty()) {
+			return -1;
+		}
+		final String value = retryAfter.trim();
+		try {
+			return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+		} catch (NumberFormatException ex) {
+			// no delay in seconds, try the HTTP date
+		}
+		try {
+			final long retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+			return Math.max(0, retryAt - nowMillis);
+		} catch (DateTimeParseException ex) {
+			return -1;
+		}
+	}
+
+	private void decrease(long latencyMillis, long nowNanos) {
+		// the responses of requests sent within the same round trip only decrease the limit once
+		if (nowNanos - lastDecreaseNanos > TimeUnit.MILLISECONDS.toNanos(latencyMillis)) {
+			inFlightLimit = Math.max(1, inFlightLimit / 2);
+			lastDecreaseNanos = nowNanos;
+		}
+	}
+
+	private void refill(long nowNanos) {
+		final double seconds = (nowNanos - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+		lastRefillNanos = nowNanos;
+		// the bucket holds the tokens of one second at most
+		lineTokens = Math.min(maxLinesPerSecond, lineTokens + seconds * maxLinesPerSecond);
+		byteTokens = Math.min(maxBytesPerSecond, byteTokens + seconds * maxBytesPerSecond);
+	}
+
+	private static long waitNanos(double tokens, double tokensPerSecond) {
+		if (tokensPerSecond <= 0 || tokens >= 0) {
+			return 0;
+		}
+		return (long) Math.ceil(-tokens / tokensPerSecond * TimeUnit.SECONDS.toNanos(1));
+	}
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import com.dynatrace.mint.MintMetricsLine;
+import com.dynatrace.mint.SchemalessMetricSanitizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line tool, which sends the results of JMeter CSV result files (JTL) to Dynatrace with their original timestamps.
+ * <p>
+ * The rows are aggregated into the same time buckets and metric lines as in the {@link MintBackendListener} and sent with
+ * the {@link MintMetricSender}. The files are parsed in batches of chunks and a bucket is sent as soon as the later rows of
+ * all files cannot change it anymore, so the memory does not depend on the size of the files. After every
+ * {@code checkpointBuckets} buckets, the tool waits for all requests and stores the timestamp of the last sent bucket in
+ * the checkpoint file, a restarted backfill skips the buckets up to this timestamp.
+ * <p>
+ * Usage: {@code java -cp "lib/*:lib/ext/*" com.dynatrace.jmeter.plugins.JtlBackfill --url <ingest url> --token <token>
+ * [--bucketSeconds 10] [--transactionDimensions k=v,...] [--maxInFlight 4] [--maxLinesPerSecond 0]
+ * [--maxBytesPerSecond 0] [--parallelism <cores>] [--checkpoint <file>] [--checkpointBuckets 60]
+ * [--httpTransport apache|http2] <jtl file>...}
+ */
+public class JtlBackfill {
+	private static final Logger log = LoggerFactory.getLogger(JtlBackfill.class);
+	private static final long COMPLETION_TIMEOUT_SECONDS = 120;
+	private final String name = "JTL backfill";
+	private final Map<String, String> options = new HashMap<>();
+	private final List<Path> files = new ArrayList<>();
+	private final MintMetricSender mintMetricSender;
+	private final int chunkBytes;
+
+	JtlBackfill(String[] args, MintMetricSender mintMetricSender) {
+		this(args, mintMetricSender, JtlParser.DEFAULT_CHUNK_BYTES);
+	}
+
+	JtlBackfill(String[] args, MintMetricSender mintMetricSender, int chunkBytes) {
+		this.mintMetricSender = mintMetricSender;
+		this.chunkBytes = chunkBytes;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].startsWith("--")) {
+				if (i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for option " + args[i]);
+				}
+				options.put(args[i].substring(2), args[++i]);
+			} else {
+				files.add(Paths.get(args[i]));
+			}
+		}
+		if (!options.containsKey("url") || files.isEmpty()) {
+			throw new IllegalArgumentException("The option --url and at least one JTL file are required");
+		}
+	}
+
+	public static void main(String[] args) {
+		final JtlBackfill backfill;
+		try {
+			backfill = new JtlBackfill(args, new MintMetricSender());
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println("Usage: JtlBackfill --url <ingest url> --token <token> [--bucketSeconds 10] "
+					+ "[--transactionDimensions k=v,...] [--maxInFlight 4] [--maxLinesPerSecond 0] [--maxBytesPerSecond 0] "
+					+ "[--parallelism <cores>] "
+					+ "[--checkpoint <file>] [--checkpointBuckets 60] [--httpTransport apache|http2] <jtl file>...");
+			System.exit(2);
+			return;
+		}
+		try {
+			backfill.run();
+		} catch (Exception ex) {
+			log.error("{}: Failed: {}", backfill.name, ex.getMessage(), ex);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the number of sent buckets
+	 */
+	long run() throws Exception {
+		final long bucketMillis = TimeUnit.SECONDS.toMillis(getIntOption("bucketSeconds", 10));
+		final int parallelism = getIntOption("parallelism", Runtime.getRuntime().availableProcessors());
+		final Path checkpointFile = options.containsKey("checkpoint") ? Paths.get(options.get("checkpoint")) : null;
+		final int checkpointBuckets = getIntOption("checkpointBuckets", 60);
+		final TransactionLines transactionLines = new TransactionLines(
+				MintBackendListener.parseDimensions(options.getOrDefault("transactionDimensions", "")));
+
+		final long checkpoint = readCheckpoint(checkpointFile);
+		mintMetricSender.setMaxInFlightRequests(getIntOption("maxInFlight", 4));
+		mintMetricSender.setRateLimits(getIntOption("maxLinesPerSecond", 0), getIntOption("maxBytesPerSecond", 0));
+		mintMetricSender.setBlockWhenFull(true);
+		mintMetricSender.setTransport(options.getOrDefault("httpTransport", MetricTransport.APACHE));
+		mintMetricSender.setup(name, options.get("url"), options.getOrDefault("token", ""));
+		final JtlParser parser = new JtlParser(bucketMillis, chunkBytes);
+		final List<JtlParser.JtlFile> jtlFiles = new ArrayList<>();
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (Path file : files) {
+				jtlFiles.add(parser.open(file));
+			}
+			mintMetricSender.checkConnection();
+			mintMetricSender.setupMetrics();
+
+			final BucketSender sender = new BucketSender(checkpointFile, checkpoint, bucketMillis, checkpointBuckets,
+					transactionLines);
+			final JtlParser.JtlAggregate pending = new JtlParser.JtlAggregate();
+			// the start of the latest parsed bucket of every file
+			final long[] latestBuckets = new long[jtlFiles.size()];
+			Arrays.fill(latestBuckets, Long.MIN_VALUE);
+			while (true) {
+				// continue with the file which lags behind, so the buckets of all files are completed in time order
+				int next = -1;
+				for (int i = 0; i < jtlFiles.size(); i++) {
+					if (jtlFiles.get(i).hasNext() && (next < 0 || latestBuckets[i] < latestBuckets[next])) {
+						next = i;
+					}
+				}
+				if (next < 0) {
+					break;
+				}
+				final JtlParser.JtlFile jtlFile = jtlFiles.get(next);
+				final JtlParser.JtlAggregate batch = jtlFile.parseNext(pool, parallelism);
+				if (!batch.getBuckets().isEmpty()) {
+					latestBuckets[next] = Math.max(latestBuckets[next], batch.getBuckets().lastKey());
+				}
+				if (!jtlFile.hasNext()) {
+					log.info("{}: Parsed {} rows ({} invalid) of {}", name, jtlFile.getRows(), jtlFile.getInvalidRows(),
+							jtlFile.getFile());
+				}
+				pending.merge(batch);
+
+				// the rows are written in the order of their end time, only the latest two buckets of a file may change
+				long completeBefore = Long.MAX_VALUE;
+				for (int i = 0; i < jtlFiles.size(); i++) {
+					if (jtlFiles.get(i).hasNext()) {
+						completeBefore = Math.min(completeBefore,
+								latestBuckets[i] == Long.MIN_VALUE ? Long.MIN_VALUE : latestBuckets[i] - bucketMillis);
+					}
+				}
+				sender.send(pending.getBuckets().headMap(completeBefore));
+			}
+			sender.send(pending.getBuckets());
+			commit(checkpointFile, sender.lastTimestamp);
+			log.info("{}: Sent {} time buckets", name, sender.sentBuckets);
+			return sender.sentBuckets;
+		} finally {
+			for (JtlParser.JtlFile jtlFile : jtlFiles) {
+				jtlFile.close();
+			}
+			pool.shutdown();
+			mintMetricSender.destroy();
+		}
+	}
+
+	/**
+	 * Sends the completed buckets and commits a checkpoint after every {@code checkpointBuckets} buckets.
+	 */
+	private class BucketSender {
+		private final Path checkpointFile;
+		private final long checkpoint;
+		private final long bucketMillis;
+		private final int checkpointBuckets;
+		private final TransactionLines transactionLines;
+		private long lastTimestamp;
+		private long sentBuckets;
+		private int uncommittedBuckets;
+		private int unsentLines;
+
+		private BucketSender(Path checkpointFile, long checkpoint, long bucketMillis, int checkpointBuckets,
+				TransactionLines transactionLines) {
+			this.checkpointFile = checkpointFile;
+			this.checkpoint = checkpoint;
+			this.lastTimestamp = checkpoint;
+			this.bucketMillis = bucketMillis;
+			this.checkpointBuckets = checkpointBuckets;
+			this.transactionLines = transactionLines;
+		}
+
+		/**
+		 * Sends and removes the buckets.
+		 */
+		private void send(SortedMap<Long, Map<String, TransactionMetric>> buckets) throws IOException, InterruptedException {
+			for (Entry<Long, Map<String, TransactionMetric>> bucket : buckets.entrySet()) {
+				final long timestamp = bucket.getKey() + bucketMillis;
+				if (timestamp <= lastTimestamp) {
+					if (timestamp > checkpoint) {
+						log.warn("{}: Dropping {} late samples of the already sent bucket {}", name,
+								bucket.getValue().values().stream().mapToLong(TransactionMetric::getTotal).sum(), timestamp);
+					}
+					continue;
+				}
+				bucket.getValue().forEach((label, metric) -> transactionLines.addMetrics(
+						SchemalessMetricSanitizer.sanitizeDimensionValue(label), metric, timestamp, this::addMetric));
+				lastTimestamp = timestamp;
+				sentBuckets++;
+				if (++uncommittedBuckets >= checkpointBuckets) {
+					commit(checkpointFile, lastTimestamp);
+					uncommittedBuckets = 0;
+					unsentLines = 0;
+				}
+			}
+			buckets.clear();
+		}
+
+		/**
+		 * Collects the lines of several buckets and sends them as soon as they fill a message.
+		 */
+		private void addMetric(MintMetricsLine line) {
+			mintMetricSender.addMetric(line);
+			// the split of the sender puts less than MAX_LINES_PER_MESSAGE lines into one message
+			if (++unsentLines >= MintMetricSender.MAX_LINES_PER_MESSAGE - 1) {
+				mintMetricSender.writeAndSendMetrics();
+				unsentLines = 0;
+			}
+		}
+	}
+
+	/**
+	 * Sends the pending metrics, waits for all requests and stores the checkpoint, if all requests have been successful.
+	 */
+	private void commit(Path checkpointFile, long timestamp) throws IOException, InterruptedException {
+		mintMetricSender.writeAndSendMetrics();
+		if (!mintMetricSender.awaitCompletion(COMPLETION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			throw new IOException("Timeout waiting for the requests to complete");
+		}
+		if (mintMetricSender.getFailedRequests() > 0) {
+			throw new IOException(mintMetricSender.getFailedRequests()
+					+ " requests failed, restart the backfill to resume from the last checkpoint");
+		}
+		if (checkpointFile != null) {
+			final Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+			Files.write(tempFile, String.valueOf(timestamp).getBytes(StandardCharsets.UTF_8));
+			Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.debug("{}: Stored checkpoint {}", name, timestamp);
+		}
+	}
+
+	private long readCheckpoint(Path checkpointFile) throws IOException {
+		if (checkpointFile == null || !Files.exists(checkpointFile)) {
+			return Long.MIN_VALUE;
+		}
+		final long checkpoint = Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim());
+		log.info("{}: Resuming after checkpoint {}", name, checkpoint);
+		return checkpoint;
+	}
+
+	private int getIntOption(String option, int defaultValue) {
+		final String value = options.get(option);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+}
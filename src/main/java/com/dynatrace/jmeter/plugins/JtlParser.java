@@ -0,0 +1,518 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses JMeter CSV result files (JTL) and aggregates the rows per time bucket and label.
+ * <p>
+ * The file is memory mapped and split into chunks at line boundaries, which are parsed in parallel by a fork/join pool.
+ * Line breaks within quoted fields (e.g. multi-line assertion messages) do not end a row or a chunk.
+ * The fields are parsed directly from the mapped bytes, only the first occurrence of a label within a chunk creates a String.
+ * The {@code timeStamp} column is expected to contain the start time in milliseconds (JMeter's default), the row is
+ * aggregated into the bucket of its end time ({@code timeStamp + elapsed}), like the samples in the backend listener.
+ */
+class JtlParser {
+	static final int DEFAULT_CHUNK_BYTES = 64 * 1024 * 1024;
+	private static final int HEADER_BYTES = 64 * 1024;
+	private final long bucketMillis;
+	private final int chunkBytes;
+
+	JtlParser(long bucketMillis, int chunkBytes) {
+		this.bucketMillis = bucketMillis;
+		this.chunkBytes = chunkBytes;
+	}
+
+	JtlAggregate parse(Path file, ForkJoinPool pool) throws IOException {
+		try (JtlFile jtlFile = open(file)) {
+			return jtlFile.parseNext(pool, Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Opens the file for parsing its chunks in batches, in the order of the file.
+	 */
+	JtlFile open(Path file) throws IOException {
+		final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			final long size = channel.size();
+			final MappedByteBuffer headerBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_BYTES));
+			final int headerEnd = indexOf(headerBuffer, 0, headerBuffer.limit(), (byte) '\n');
+			if (headerEnd < 0) {
+				throw new IOException("No header line found in " + file);
+			}
+			final Columns columns = new Columns(decode(headerBuffer, 0, headerEnd), file);
+			return new JtlFile(file, channel, columns, splitChunks(channel, headerEnd + 1, size));
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Splits the file into chunks of about {@code chunkBytes}, which start at the beginning of a line.
+	 * The quotes of every chunk are counted, so a chunk does not end at a line break within a quoted field.
+	 */
+	private List<long[]> splitChunks(FileChannel channel, long start, long size) throws IOException {
+		final List<long[]> chunks = new ArrayList<>();
+		long chunkStart = start;
+		while (chunkStart < size) {
+			final MappedByteBuffer chunkBuffer = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart,
+					Math.min(size - chunkStart, chunkBytes));
+			boolean quoted = isQuoted(chunkBuffer, 0, chunkBuffer.limit(), false);
+			long chunkEnd = chunkStart + chunkBuffer.limit();
+			while (chunkEnd < size) {
+				final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunkEnd,
+						Math.min(size - chunkEnd, HEADER_BYTES));
+				final int lineEnd = indexOfLineEnd(buffer, 0, buffer.limit(), quoted);
+				if (lineEnd >= 0) {
+					chunkEnd += lineEnd + 1;
+					break;
+				}
+				quoted = isQuoted(buffer, 0, buffer.limit(), quoted);
+				chunkEnd += buffer.limit();
+			}
+			chunks.add(new long[] { chunkStart, chunkEnd });
+			chunkStart = chunkEnd;
+		}
+		return chunks;
+	}
+
+	/**
+	 * @return the index of the first line break, which is not within a quoted field, or -1
+	 */
+	private static int indexOfLineEnd(MappedByteBuffer buffer, int from, int to, boolean quoted) {
+		for (int i = from; i < to; i++) {
+			final byte value = buffer.get(i);
+			if (value == '"') {
+				// an escaped quote "" toggles twice
+				quoted = !quoted;
+			} else if (value == '\n' && !quoted) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return if the end of the range is within a quoted field
+	 */
+	private static boolean isQuoted(MappedByteBuffer buffer, int from, int to, boolean quoted) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == '"') {
+				quoted = !quoted;
+			}
+		}
+		return quoted;
+	}
+
+	private static int indexOf(MappedByteBuffer buffer, int from, int to, byte value) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static String decode(MappedByteBuffer buffer, int start, int end) {
+		final byte[] bytes = new byte[end - start];
+		for (int i = start; i < end; i++) {
+			bytes[i - start] = buffer.get(i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8).trim();
+	}
+
+	/**
+	 * The aggregated rows of one or more chunks.
+	 */
+	static class JtlAggregate {
+		private final TreeMap<Long, Map<String, TransactionMetric>> buckets = new TreeMap<>();
+		private long rows;
+		private long invalidRows;
+
+		/**
+		 * @return the aggregates per label by the start time of their bucket
+		 */
+		TreeMap<Long, Map<String, TransactionMetric>> getBuckets() {
+			return buckets;
+		}
+
+		long getRows() {
+			return rows;
+		}
+
+		long getInvalidRows() {
+			return invalidRows;
+		}
+
+		void merge(JtlAggregate other) {
+			rows += other.rows;
+			invalidRows += other.invalidRows;
+			other.buckets.forEach((bucketStart, metrics) -> {
+				final Map<String, TransactionMetric> bucket = buckets.get(bucketStart);
+				if (bucket == null) {
+					buckets.put(bucketStart, metrics);
+				} else {
+					metrics.forEach((label, metric) -> bucket.merge(label, metric, (m1, m2) -> {
+						m1.merge(m2);
+						return m1;
+					}));
+				}
+			});
+		}
+	}
+
+	/**
+	 * An open JTL file, which is parsed in batches of chunks to limit the memory of the aggregates.
+	 */
+	class JtlFile implements Closeable {
+		private final Path file;
+		private final FileChannel channel;
+		private final Columns columns;
+		private final List<long[]> chunks;
+		private int nextChunk;
+		private long rows;
+		private long invalidRows;
+
+		private JtlFile(Path file, FileChannel channel, Columns columns, List<long[]> chunks) {
+			this.file = file;
+			this.channel = channel;
+			this.columns = columns;
+			this.chunks = chunks;
+		}
+
+		Path getFile() {
+			return file;
+		}
+
+		boolean hasNext() {
+			return nextChunk < chunks.size();
+		}
+
+		/**
+		 * Parses up to {@code maxChunks} of the next chunks in parallel.
+		 */
+		JtlAggregate parseNext(ForkJoinPool pool, int maxChunks) {
+			final int to = (int) Math.min(chunks.size(), (long) nextChunk + maxChunks);
+			final JtlAggregate result = pool.invoke(new ChunkTask(channel, columns, chunks, nextChunk, to));
+			nextChunk = to;
+			rows += result.rows;
+			invalidRows += result.invalidRows;
+			return result;
+		}
+
+		long getRows() {
+			return rows;
+		}
+
+		long getInvalidRows() {
+			return invalidRows;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private static class Columns {
+		private final int count;
+		private final int timeStamp;
+		private final int elapsed;
+		private final int label;
+		private final int success;
+		private final int bytes;
+		private final int sentBytes;
+		private final int responseCode;
+		private final int failureMessage;
+
+		private Columns(String header, Path file) throws IOException {
+			final List<String> names = Arrays.asList(header.split(","));
+			count = names.size();
+			timeStamp = names.indexOf("timeStamp");
+			elapsed = names.indexOf("elapsed");
+			label = names.indexOf("label");
+			success = names.indexOf("success");
+			bytes = names.indexOf("bytes");
+			sentBytes = names.indexOf("sentBytes");
+			responseCode = names.indexOf("responseCode");
+			failureMessage = names.indexOf("failureMessage");
+			if (timeStamp < 0 || elapsed < 0 || label < 0 || success < 0) {
+				throw new IOException("Missing column timeStamp, elapsed, label or success in header of " + file);
+			}
+		}
+	}
+
+	private class ChunkTask extends RecursiveTask<JtlAggregate> {
+		private static final long serialVersionUID = 1L;
+		private final FileChannel channel;
+		private final Columns columns;
+		private final List<long[]> chunks;
+		private final int from;
+		private final int to;
+
+		private ChunkTask(FileChannel channel, Columns columns, List<long[]> chunks, int from, int to) {
+			this.channel = channel;
+			this.columns = columns;
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected JtlAggregate compute() {
+			if (to - from > 1) {
+				final int middle = (from + to) >>> 1;
+				final ChunkTask right = new ChunkTask(channel, columns, chunks, middle, to);
+				right.fork();
+				final JtlAggregate result = new ChunkTask(channel, columns, chunks, from, middle).compute();
+				result.merge(right.join());
+				return result;
+			}
+			final JtlAggregate result = new JtlAggregate();
+			if (from < to) {
+				try {
+					final long[] chunk = chunks.get(from);
+					new ChunkParser(columns, result).parse(
+							channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]));
+				} catch (IOException ex) {
+					throw new IllegalStateException("Failed to map chunk of JTL file: " + ex.getMessage(), ex);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Parses the lines of one chunk, reusing the field positions for every line.
+	 */
+	private class ChunkParser {
+		private final Columns columns;
+		private final JtlAggregate result;
+		private final int[] fieldStarts;
+		private final int[] fieldEnds;
+		private final LabelTable labels = new LabelTable();
+		private final LabelTable responseCodes = new LabelTable();
+		private long currentBucketStart = Long.MIN_VALUE;
+		private Map<String, TransactionMetric> currentBucket;
+
+		private ChunkParser(Columns columns, JtlAggregate result) {
+			this.columns = columns;
+			this.result = result;
+			this.fieldStarts = new int[columns.count];
+			this.fieldEnds = new int[columns.count];
+		}
+
+		private void parse(MappedByteBuffer buffer) {
+			final int limit = buffer.limit();
+			int lineStart = 0;
+			while (lineStart < limit) {
+				int lineEnd = indexOfLineEnd(buffer, lineStart, limit, false);
+				if (lineEnd < 0) {
+					lineEnd = limit;
+				}
+				int contentEnd = lineEnd;
+				if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+					contentEnd--;
+				}
+				if (contentEnd > lineStart) {
+					parseLine(buffer, lineStart, contentEnd);
+				}
+				lineStart = lineEnd + 1;
+			}
+		}
+
+		private void parseLine(MappedByteBuffer buffer, int start, int end) {
+			int field = 0;
+			int position = start;
+			while (field < columns.count && position <= end) {
+				int fieldEnd = position;
+				if (position < end && buffer.get(position) == '"') {
+					// quoted field, "" is an escaped quote
+					fieldEnd++;
+					while (fieldEnd < end) {
+						if (buffer.get(fieldEnd) == '"') {
+							if (fieldEnd + 1 < end && buffer.get(fieldEnd + 1) == '"') {
+								fieldEnd++;
+							} else {
+								fieldEnd++;
+								break;
+							}
+						}
+						fieldEnd++;
+					}
+				}
+				while (fieldEnd < end && buffer.get(fieldEnd) != ',') {
+					fieldEnd++;
+				}
+				fieldStarts[field] = position;
+				fieldEnds[field] = fieldEnd;
+				field++;
+				position = fieldEnd + 1;
+			}
+			result.rows++;
+			if (field <= Math.max(Math.max(columns.timeStamp, columns.elapsed), Math.max(columns.label, columns.success))) {
+				result.invalidRows++;
+				return;
+			}
+
+			try {
+				final long timeStamp = parseLong(buffer, columns.timeStamp);
+				final long elapsed = parseLong(buffer, columns.elapsed);
+				final boolean successful = (buffer.get(fieldStarts[columns.success]) | 0x20) == 't';
+				final long receivedBytes = columns.bytes >= 0 && columns.bytes < field ? parseLong(buffer, columns.bytes) : 0;
+				final long sentBytes = columns.sentBytes >= 0 && columns.sentBytes < field ? parseLong(buffer, columns.sentBytes) : 0;
+				final String label = labels.get(buffer, fieldStarts[columns.label], fieldEnds[columns.label]);
+				final TransactionMetric metric = getBucket(timeStamp + elapsed).computeIfAbsent(label, k -> new TransactionMetric());
+				metric.add(elapsed, successful ? 1 : 0, successful ? 0 : 1, 1, sentBytes, receivedBytes, 1);
+				final String code = columns.responseCode >= 0 && columns.responseCode < field
+						? responseCodes.get(buffer, fieldStarts[columns.responseCode], fieldEnds[columns.responseCode]) : null;
+				metric.addResponseCode(code, 1);
+				if (!successful) {
+					final boolean assertionFailed = columns.failureMessage >= 0 && columns.failureMessage < field
+							&& fieldStarts[columns.failureMessage] < fieldEnds[columns.failureMessage];
+					metric.addFailure(ResponseCodeCounts.getFailureClass(code, assertionFailed), 1);
+				}
+			} catch (NumberFormatException | IndexOutOfBoundsException ex) {
+				result.invalidRows++;
+			}
+		}
+
+		private Map<String, TransactionMetric> getBucket(long endTime) {
+			final long bucketStart = endTime - Math.floorMod(endTime, bucketMillis);
+			if (bucketStart != currentBucketStart) {
+				currentBucketStart = bucketStart;
+				currentBucket = result.buckets.computeIfAbsent(bucketStart, k -> new HashMap<>());
+			}
+			return currentBucket;
+		}
+
+		private long parseLong(MappedByteBuffer buffer, int field) {
+			final int start = fieldStarts[field];
+			final int end = fieldEnds[field];
+			if (start >= end) {
+				throw new NumberFormatException("empty field");
+			}
+			long value = 0;
+			for (int i = start; i < end; i++) {
+				final int digit = buffer.get(i) - '0';
+				if (digit < 0 || digit > 9) {
+					throw new NumberFormatException("invalid digit");
+				}
+				value = value * 10 + digit;
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Open addressing table from the raw label bytes to the label String.
+	 */
+	private static class LabelTable {
+		private byte[][] keys = new byte[64][];
+		private int[] hashes = new int[64];
+		private String[] values = new String[64];
+		private int size;
+
+		private String get(MappedByteBuffer buffer, int start, int end) {
+			int hash = 1;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + buffer.get(i);
+			}
+			int index = mix(hash) & (keys.length - 1);
+			while (keys[index] != null) {
+				if (hashes[index] == hash && matches(keys[index], buffer, start, end)) {
+					return values[index];
+				}
+				index = (index + 1) & (keys.length - 1);
+			}
+
+			final byte[] key = new byte[end - start];
+			for (int i = start; i < end; i++) {
+				key[i - start] = buffer.get(i);
+			}
+			keys[index] = key;
+			hashes[index] = hash;
+			values[index] = toLabel(key);
+			final String value = values[index];
+			if (++size * 2 > keys.length) {
+				resize();
+			}
+			return value;
+		}
+
+		private static boolean matches(byte[] key, MappedByteBuffer buffer, int start, int end) {
+			if (key.length != end - start) {
+				return false;
+			}
+			for (int i = 0; i < key.length; i++) {
+				if (key[i] != buffer.get(start + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static String toLabel(byte[] key) {
+			final String label = new String(key, StandardCharsets.UTF_8);
+			if (label.length() >= 2 && label.startsWith("\"") && label.endsWith("\"")) {
+				return label.substring(1, label.length() - 1).replace("\"\"", "\"");
+			}
+			return label;
+		}
+
+		private void resize() {
+			final byte[][] oldKeys = keys;
+			final int[] oldHashes = hashes;
+			final String[] oldValues = values;
+			keys = new byte[oldKeys.length * 2][];
+			hashes = new int[oldKeys.length * 2];
+			values = new String[oldKeys.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					int index = mix(oldHashes[i]) & (keys.length - 1);
+					while (keys[index] != null) {
+						index = (index + 1) & (keys.length - 1);
+					}
+					keys[index] = oldKeys[i];
+					hashes[index] = oldHashes[i];
+					values[index] = oldValues[i];
+				}
+			}
+		}
+
+		private static int mix(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+	}
+}
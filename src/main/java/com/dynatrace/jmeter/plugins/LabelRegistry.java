@@ -0,0 +1,106 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import com.dynatrace.mint.SchemalessMetricSanitizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the per label state which is needed across send intervals (filter result, sanitized dimension value)
+ * and forgets the labels which have not been seen for a configurable number of intervals.
+ */
+class LabelRegistry {
+	private static final Logger log = LoggerFactory.getLogger(LabelRegistry.class);
+	private final Pattern samplersToFilter;
+	private final int idleIntervals;
+	private final Map<String, Label> labels = new HashMap<>();
+	private long interval;
+
+	/**
+	 * @param samplersToFilter the labels which are sent
+	 * @param idleIntervals the number of intervals without samples, after which a label is forgotten
+	 */
+	LabelRegistry(Pattern samplersToFilter, int idleIntervals) {
+		this.samplersToFilter = samplersToFilter;
+		this.idleIntervals = idleIntervals;
+	}
+
+	/**
+	 * @return the state of the label, which is marked as active within the current interval
+	 */
+	Label get(String name) {
+		Label label = labels.get(name);
+		if (label == null) {
+			log.debug("Checking if SampleLabel '{}' matches Regex '{}'", name, samplersToFilter);
+			label = new Label(name, samplersToFilter.matcher(name).find());
+			labels.put(name, label);
+		}
+		label.lastActiveInterval = interval;
+		return label;
+	}
+
+	/**
+	 * Starts the next interval and removes the labels which have been idle for too long.
+	 *
+	 * @return the names of the removed labels
+	 */
+	List<String> nextInterval() {
+		interval++;
+		final List<String> removed = new ArrayList<>();
+		final Iterator<Label> iterator = labels.values().iterator();
+		while (iterator.hasNext()) {
+			final Label label = iterator.next();
+			if (interval - label.lastActiveInterval > idleIntervals) {
+				iterator.remove();
+				removed.add(label.name);
+			}
+		}
+		return removed;
+	}
+
+	static class Label {
+		private final String name;
+		private final boolean sent;
+		private final String dimensionValue;
+		private long lastActiveInterval;
+
+		private Label(String name, boolean sent) {
+			this.name = name;
+			this.sent = sent;
+			this.dimensionValue = SchemalessMetricSanitizer.sanitizeDimensionValue(name);
+		}
+
+		/**
+		 * @return true if the label matches the samplers regex
+		 */
+		boolean isSent() {
+			return sent;
+		}
+
+		String getDimensionValue() {
+			return dimensionValue;
+		}
+	}
+}
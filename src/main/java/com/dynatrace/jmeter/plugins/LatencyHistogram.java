@@ -0,0 +1,155 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.util.Arrays;
+
+/**
+ * Compact log-linear histogram for non-negative millisecond values.
+ * <p>
+ * Values below {@code 2 * SUB_BUCKETS} are counted exactly, every higher power of two is split into
+ * {@code SUB_BUCKETS} equally sized buckets, so the relative error of a percentile is below 100 / SUB_BUCKETS percent.
+ * The bucket array only grows up to the highest recorded value, and two histograms are merged in O(buckets).
+ */
+class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final long MAX_VALUE = Integer.MAX_VALUE;
+	private static final long[] EMPTY = new long[0];
+	private final int maxBuckets;
+	private long[] counts = EMPTY;
+	private long totalCount;
+	private long minValue = Long.MAX_VALUE;
+	private long maxValue = Long.MIN_VALUE;
+
+	LatencyHistogram() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxBuckets limits the memory of the histogram, higher values are counted in the last bucket and
+	 * their percentiles are underestimated (except for the maximum)
+	 */
+	LatencyHistogram(int maxBuckets) {
+		this.maxBuckets = maxBuckets;
+	}
+
+	void add(long value) {
+		add(value, 1);
+	}
+
+	void add(long value, long count) {
+		final long v = Math.max(0, Math.min(value, MAX_VALUE));
+		final int index = Math.min(index(v), maxBuckets - 1);
+		if (index >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.min(maxBuckets, Math.max(index + 1, counts.length + SUB_BUCKETS)));
+		}
+		counts[index] += count;
+		totalCount += count;
+		minValue = Math.min(minValue, v);
+		maxValue = Math.max(maxValue, v);
+	}
+
+	void merge(LatencyHistogram other) {
+		if (other.totalCount == 0) {
+			return;
+		}
+		final int length = Math.min(other.counts.length, maxBuckets);
+		if (length > counts.length) {
+			counts = Arrays.copyOf(counts, length);
+		}
+		for (int i = 0; i < other.counts.length; i++) {
+			counts[Math.min(i, maxBuckets - 1)] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		minValue = Math.min(minValue, other.minValue);
+		maxValue = Math.max(maxValue, other.maxValue);
+	}
+
+	long getTotalCount() {
+		return totalCount;
+	}
+
+	long getMinValue() {
+		return totalCount == 0 ? 0 : minValue;
+	}
+
+	long getMaxValue() {
+		return totalCount == 0 ? 0 : maxValue;
+	}
+
+	/**
+	 * @param percentile the percentile between 0 and 100
+	 * @return the estimated value at the given percentile, or 0 if the histogram is empty
+	 */
+	double getPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		if (rank >= totalCount) {
+			return maxValue;
+		}
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			count += counts[i];
+			if (count >= rank) {
+				return Math.max(minValue, Math.min(maxValue, bucketMidpoint(i)));
+			}
+		}
+		return maxValue;
+	}
+
+	/**
+	 * Passes the non empty buckets in ascending order to the consumer.
+	 */
+	void forEachBucket(BucketConsumer consumer) {
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				consumer.accept(lowerBound(i), lowerBound(i + 1) - 1, counts[i]);
+			}
+		}
+	}
+
+	static int index(long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >> shift);
+	}
+
+	private static double bucketMidpoint(int index) {
+		return (lowerBound(index) + lowerBound(index + 1) - 1) / 2.0;
+	}
+
+	private static long lowerBound(int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		return (long) (index - shift * SUB_BUCKETS) << shift;
+	}
+
+	interface BucketConsumer {
+		/**
+		 * @param lowerBound the smallest value of the bucket
+		 * @param upperBound the largest value of the bucket
+		 */
+		void accept(long lowerBound, long upperBound, long count);
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the requests of the {@link MintMetricSender} and the {@link OtlpMetricExporter} to a fixed url.
+ * <p>
+ * {@link #send} is asynchronous: the returned future completes with the response of the server, also for error
+ * status codes, or exceptionally if the request failed or was cancelled. Several requests may be in flight at the
+ * same time, the transport keeps no state of a single request. {@link #close} releases the transport, requests
+ * which are still in flight are aborted or never completed.
+ */
+interface MetricTransport extends Closeable {
+	String APACHE = "apache";
+	/**
+	 * Alias of {@link #APACHE}, which was the default before the HTTP/2 transport became opt-in. It is kept, so test
+	 * plans which still contain it keep working.
+	 */
+	String AUTO = "auto";
+	String HTTP2 = "http2";
+	int CONNECT_TIMEOUT = 10_000;
+	int SOCKET_TIMEOUT = 30_000;
+
+	/**
+	 * Sends a POST request with the body.
+	 */
+	CompletableFuture<Response> send(byte[] body, String contentType);
+
+	@Override
+	void close();
+
+	/**
+	 * Creates the transport of the type. {@link #HTTP2} requires Java 11 and falls back to the Apache transport on
+	 * Java 8, all other types ({@link #APACHE} and its alias {@link #AUTO}) select the Apache HTTP/1.1 transport.
+	 * HTTP/2 is opt-in, because it has not been faster than the Apache transport in the benchmarks yet.
+	 *
+	 * @param maxConnections the maximum number of connections of a HTTP/1.1 transport
+	 */
+	static MetricTransport create(String name, String type, URL url, String token, int maxConnections) {
+		if (HTTP2.equals(type)) {
+			try {
+				return (MetricTransport) Class.forName("com.dynatrace.jmeter.plugins.JdkHttpTransport")
+						.getDeclaredConstructor(URL.class, String.class).newInstance(url, token);
+			} catch (ReflectiveOperationException | LinkageError ex) {
+				LoggerFactory.getLogger(MetricTransport.class)
+						.warn("{}: HTTP/2 transport requires Java 11, using the Apache HTTP client: {}", name, ex.toString());
+			}
+		}
+		return new ApacheHttpTransport(url, token, maxConnections);
+	}
+
+	/**
+	 * The status code, the Retry-After header and the body of a response.
+	 */
+	class Response {
+		private final int statusCode;
+		private final String retryAfter;
+		private final String body;
+
+		Response(int statusCode, String retryAfter, String body) {
+			this.statusCode = statusCode;
+			this.retryAfter = retryAfter;
+			this.body = body;
+		}
+
+		int getStatusCode() {
+			return statusCode;
+		}
+
+		/**
+		 * @return the value of the Retry-After header, or null
+		 */
+		String getRetryAfter() {
+			return retryAfter;
+		}
+
+		String getBody() {
+			return body;
+		}
+	}
+}
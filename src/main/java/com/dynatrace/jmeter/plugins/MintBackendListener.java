@@ -21,25 +21,27 @@ import com.dynatrace.mint.MintGauge;
 import com.dynatrace.mint.MintMetricsLine;
 import com.dynatrace.mint.SchemalessMetricSanitizer;
 import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.engine.StandardJMeterEngine;
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jmeter.visualizers.backend.AbstractBackendListenerClient;
 import org.apache.jmeter.visualizers.backend.BackendListenerContext;
-import org.apache.jmeter.visualizers.backend.SamplerMetric;
 import org.apache.jmeter.visualizers.backend.UserMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -47,15 +49,38 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 	private static final Logger log = LoggerFactory.getLogger(MintBackendListener.class);
 	private static final Map<String, String> DEFAULT_ARGS = new HashMap<>();
 	private static final long SEND_INTERVAL = 60;
+	private static final int DEFAULT_BUCKET_SECONDS = 10;
+	private static final int DEFAULT_SAMPLING_MAX_BATCH_SIZE = 2500;
+	private static final int DEFAULT_GAUGE_HEARTBEAT_INTERVALS = 5;
+	private static final int DEFAULT_LABEL_IDLE_INTERVALS = 10;
+	private static final String DEFAULT_OPEN_METRICS_BIND_ADDRESS = "127.0.0.1";
+	private static final String ALL_TRANSACTIONS = "all";
 	private ScheduledExecutorService scheduler;
 	private ScheduledFuture<?> timerHandle;
 	private MintMetricSender mintMetricSender;
 	private Map<String, String> testDimensions = new HashMap<>();
 	private Map<String, String> transactionDimensions = new HashMap<>();
+	private TransactionLines transactionLines = new TransactionLines(transactionDimensions);
 	private boolean enabled;
 	private String listenerName;
 	private String sendSamplersByRegex;
 	private Pattern samplersToFilter;
+	private LabelRegistry labels;
+	private GaugeHeartbeat gaugeHeartbeat;
+	private final Map<String, TransactionMetric> testMetrics = new HashMap<>();
+	private final Map<String, TransactionMetric> changedTestMetrics = new HashMap<>();
+	private final Map<String, Double> openMetricsGauges = new TreeMap<>();
+	private final TransactionMetric allTestMetrics = new TransactionMetric();
+	private TimeBucketRing timeBuckets;
+	private EngineHealthCollector engineHealthCollector;
+	private OtlpMetricExporter otlpMetricExporter;
+	private OpenMetricsEndpoint openMetricsEndpoint;
+	private SubResultAggregator subResults;
+	private SamplingController samplingController;
+	private String engineName;
+	private List<SloRule> sloRules = new ArrayList<>();
+	private boolean sloStopTest;
+	private boolean sloTestStopped;
 
 	static {
 		DEFAULT_ARGS.put("dynatraceMetricIngestUrl", "https://DT_SERVER/api/v2/metrics/ingest");
@@ -65,6 +90,20 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 		DEFAULT_ARGS.put("enabled", "${__P(enabled, true)}");
 		DEFAULT_ARGS.put("name", "DT MINT Backendlistener");
 		DEFAULT_ARGS.put("samplersRegex", ".*");
+		DEFAULT_ARGS.put("bucketSeconds", String.valueOf(DEFAULT_BUCKET_SECONDS));
+		DEFAULT_ARGS.put("engineMetrics", "true");
+		DEFAULT_ARGS.put("gaugeHeartbeatIntervals", String.valueOf(DEFAULT_GAUGE_HEARTBEAT_INTERVALS));
+		DEFAULT_ARGS.put("labelIdleIntervals", String.valueOf(DEFAULT_LABEL_IDLE_INTERVALS));
+		DEFAULT_ARGS.put("subResultsDepth", "0");
+		DEFAULT_ARGS.put("samplingMaxBatchSize", String.valueOf(DEFAULT_SAMPLING_MAX_BATCH_SIZE));
+		DEFAULT_ARGS.put("ingestMaxLinesPerSecond", "0");
+		DEFAULT_ARGS.put("ingestMaxBytesPerSecond", "0");
+		DEFAULT_ARGS.put("httpTransport", MetricTransport.APACHE);
+		DEFAULT_ARGS.put("otlpMetricsUrl", "");
+		DEFAULT_ARGS.put("openMetricsPort", "0");
+		DEFAULT_ARGS.put("openMetricsBindAddress", DEFAULT_OPEN_METRICS_BIND_ADDRESS);
+		DEFAULT_ARGS.put("sloRules", "");
+		DEFAULT_ARGS.put("sloStopTest", "false");
 	}
 
 	@Override
@@ -72,33 +111,66 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 		super.setupTest(context);
 		listenerName = context.getParameter("name");
 		log.info("{}: Test started", listenerName);
+		int bucketSeconds = context.getIntParameter("bucketSeconds", DEFAULT_BUCKET_SECONDS);
+		if (bucketSeconds <= 0) {
+			log.warn("{}: Invalid bucketSeconds {}, using {}", listenerName, bucketSeconds, DEFAULT_BUCKET_SECONDS);
+			bucketSeconds = DEFAULT_BUCKET_SECONDS;
+		}
+		// the ring holds two send intervals and a bucket is flushed one bucket after its end, so samples arriving up to
+		// one bucket late are still added to their own bucket
+		int bucketCount = (int) (2 * SEND_INTERVAL / bucketSeconds) + 2;
+		timeBuckets = new TimeBucketRing(TimeUnit.SECONDS.toMillis(bucketSeconds), bucketCount, System.currentTimeMillis());
+		log.info("{}: Configured time buckets of {} seconds", listenerName, bucketSeconds);
+		int samplingMaxBatchSize = context.getIntParameter("samplingMaxBatchSize", DEFAULT_SAMPLING_MAX_BATCH_SIZE);
+		samplingController = new SamplingController(listenerName, samplingMaxBatchSize);
+		log.info("{}: Configured sampling for batches above {} samples", listenerName, samplingMaxBatchSize);
 		scheduler = Executors.newScheduledThreadPool(1);
 		timerHandle = this.scheduler.scheduleAtFixedRate(this, 0L, SEND_INTERVAL, TimeUnit.SECONDS);
 		mintMetricSender = new MintMetricSender();
+		int ingestMaxLinesPerSecond = context.getIntParameter("ingestMaxLinesPerSecond", 0);
+		int ingestMaxBytesPerSecond = context.getIntParameter("ingestMaxBytesPerSecond", 0);
+		mintMetricSender.setRateLimits(ingestMaxLinesPerSecond, ingestMaxBytesPerSecond);
+		log.info("{}: Configured ingest limits of {} lines/s and {} bytes/s", listenerName, ingestMaxLinesPerSecond,
+				ingestMaxBytesPerSecond);
+		String httpTransport = context.getParameter("httpTransport", MetricTransport.APACHE).trim();
+		mintMetricSender.setTransport(httpTransport);
+		log.info("{}: Configured HTTP transport {}", listenerName, httpTransport);
 		String dynatraceMetricIngestUrl = context.getParameter("dynatraceMetricIngestUrl");
 		String dynatraceApiToken = context.getParameter("dynatraceApiToken");
 
 		sendSamplersByRegex = context.getParameter("samplersRegex", "");
 		samplersToFilter = Pattern.compile(sendSamplersByRegex);
+		int labelIdleIntervals = context.getIntParameter("labelIdleIntervals", DEFAULT_LABEL_IDLE_INTERVALS);
+		labels = new LabelRegistry(samplersToFilter, labelIdleIntervals);
+		int subResultsDepth = context.getIntParameter("subResultsDepth", 0);
+		if (subResultsDepth > 0) {
+			subResults = new SubResultAggregator(subResultsDepth);
+			log.info("{}: Configured aggregation of sub-results up to depth {}", listenerName, subResultsDepth);
+		}
+		int gaugeHeartbeatIntervals = Math.max(1,
+				context.getIntParameter("gaugeHeartbeatIntervals", DEFAULT_GAUGE_HEARTBEAT_INTERVALS));
+		gaugeHeartbeat = new GaugeHeartbeat(gaugeHeartbeatIntervals);
+		log.info("{}: Configured gauge heartbeat of {} intervals, forgetting samplers after {} idle intervals",
+				listenerName, gaugeHeartbeatIntervals, labelIdleIntervals);
 
 		final String testDimensionString = context.getParameter("testDimensions", "");
 		final String transactionDimensionString = context.getParameter("transactionDimensions", "");
-		testDimensions.putAll(Arrays.stream(testDimensionString.split("[, ]"))
-				.map(s -> s.split("[= ]"))
-				.filter(strings -> strings.length == 2)
-				.collect(Collectors.toMap(
-						a -> a[0],  //key
-						a -> a[1]   //value
-				)));
-		transactionDimensions.putAll(Arrays.stream(transactionDimensionString.split("[, ]"))
-				// filter default dimension SERVICE-XXXXXXXXXXXXX
-				.filter(strings -> !strings.equals(DEFAULT_ARGS.get("transactionDimensions")))
-				.map(s -> s.split("[= ]"))
-				.filter(strings -> strings.length == 2)
-				.collect(Collectors.toMap(
-						a -> a[0],  //key
-						a -> a[1]   //value
-				)));
+		testDimensions.putAll(parseDimensions(testDimensionString));
+		transactionDimensions.putAll(parseDimensions(transactionDimensionString));
+
+		if (context.getBooleanParameter("engineMetrics", true)) {
+			engineHealthCollector = new EngineHealthCollector();
+			engineName = JMeterUtils.getLocalHostName();
+			log.info("{}: Configured engine metrics for engine {}", listenerName, engineName);
+		}
+
+		try {
+			sloRules = SloRule.parse(context.getParameter("sloRules", ""));
+		} catch (IllegalArgumentException ex) {
+			log.error("{}: {}, SLO rules are ignored", listenerName, ex.getMessage());
+		}
+		sloStopTest = context.getBooleanParameter("sloStopTest", false);
+		log.info("{}: Configured SLO rules {}, stop test on violation: {}", listenerName, sloRules, sloStopTest);
 
 		String enableParam = context.getParameter("enabled", "true");
 		enabled = Boolean.parseBoolean(enableParam);
@@ -113,6 +185,12 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 				mintMetricSender.checkConnection();
                 mintMetricSender.setupMetrics();
 				log.info("{}: Start MINT metric sender for url {}", listenerName, dynatraceMetricIngestUrl);
+				String otlpMetricsUrl = context.getParameter("otlpMetricsUrl", "").trim();
+				if (!otlpMetricsUrl.isEmpty()) {
+					otlpMetricExporter = new OtlpMetricExporter(listenerName, otlpMetricsUrl, dynatraceApiToken,
+							testDimensions, transactionDimensions, TimeUnit.SECONDS.toMillis(bucketSeconds), httpTransport);
+					log.info("{}: Sending transaction metrics as OTLP to url {}", listenerName, otlpMetricsUrl);
+				}
 			} catch (Exception ex) {
 				log.info("{}: Start MINT metric sender for url {} failed with {}, setting enabled state to false",
 						listenerName, dynatraceMetricIngestUrl, ex.getMessage());
@@ -120,9 +198,35 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 				enabled = false;
 			}
 		}
+		int openMetricsPort = context.getIntParameter("openMetricsPort", 0);
+		if (enabled && openMetricsPort > 0) {
+			try {
+				openMetricsEndpoint = new OpenMetricsEndpoint(listenerName,
+						context.getParameter("openMetricsBindAddress", DEFAULT_OPEN_METRICS_BIND_ADDRESS), openMetricsPort);
+				openMetricsEndpoint.start();
+			} catch (IOException ex) {
+				log.error("{}: Failed to start OpenMetrics endpoint at port {}: {}", listenerName, openMetricsPort,
+						ex.getMessage());
+			}
+		}
 		log.info("{}: Enabled state {}", listenerName, enabled);
 	}
 
+	/**
+	 * Parses a comma-separated list of key=value pairs.
+	 */
+	static Map<String, String> parseDimensions(String dimensions) {
+		return Arrays.stream(dimensions.split("[, ]"))
+				// filter default dimension SERVICE-XXXXXXXXXXXXX
+				.filter(strings -> !strings.equals(DEFAULT_ARGS.get("transactionDimensions")))
+				.map(s -> s.split("[= ]"))
+				.filter(strings -> strings.length == 2)
+				.collect(Collectors.toMap(
+						a -> a[0],  //key
+						a -> a[1]   //value
+				));
+	}
+
 	@Override
 	public void teardownTest(BackendListenerContext context) throws Exception {
 		log.info("{}: Test finished", listenerName);
@@ -139,10 +243,16 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 
 		if (enabled) {
 			log.info("{}: Sending last metrics", listenerName);
-			this.sendMetrics();
+			this.sendMetrics(true);
 		}
 
 		mintMetricSender.destroy();
+		if (openMetricsEndpoint != null) {
+			openMetricsEndpoint.stop();
+		}
+		if (otlpMetricExporter != null) {
+			otlpMetricExporter.destroy();
+		}
 		super.teardownTest(context);
 	}
 
@@ -159,27 +269,25 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 			BackendListenerContext backendListenerContext) {
 		log.debug("{}: handleSampleResults for {} samples", listenerName, sampleResults.size());
 
+		final long start = System.nanoTime();
 		UserMetric userMetrics = getUserMetrics();
+		final int samplingFactor = samplingController.getSamplingFactor();
 
 		for (SampleResult sampleResult : sampleResults) {
-			userMetrics.add(sampleResult);
-
-			SamplerMetric samplerMetric = this.getSamplerMetric(sampleResult.getSampleLabel());
-			samplerMetric.add(sampleResult);
-
-			final SamplerMetric cumulatedMetrics = this.getSamplerMetric(sampleResult.getSampleLabel());
-			cumulatedMetrics.add(sampleResult);
+			if (samplingController.shouldProcess()) {
+				userMetrics.add(sampleResult);
+				timeBuckets.add(sampleResult.getSampleLabel(), sampleResult, samplingFactor);
+				if (subResults != null) {
+					subResults.add(sampleResult, timeBuckets, samplingFactor);
+				}
+			}
 		}
+		samplingController.recordBatch(sampleResults.size(), System.nanoTime() - start);
 
 		log.debug("{}: handleSampleResults: UserMetrics(startedThreads={}, finishedThreads={})",
 				listenerName,
 				getUserMetrics().getStartedThreads(),
 				getUserMetrics().getFinishedThreads());
-		final SamplerMetric allCumulatedMetrics = this.getSamplerMetric("all");
-		log.debug("{}: handleSampleResults: cumulatedMetrics(hits={}, errors={}, success={}, total={})",
-				listenerName,
-				allCumulatedMetrics.getHits(), allCumulatedMetrics.getErrors(), allCumulatedMetrics.getSuccesses(),
-				allCumulatedMetrics.getTotal());
 	}
 
 	@Override
@@ -187,7 +295,7 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 		log.debug("{}: run started", listenerName);
 		if (enabled) {
 			try {
-				this.sendMetrics();
+				this.sendMetrics(false);
 			} catch (Exception ex) {
 				log.error("{}: Failed to send metrics: {}", listenerName, ex.getMessage());
 			}
@@ -197,30 +305,61 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 		log.debug("{}: run finished", listenerName);
 	}
 
-	private void sendMetrics() {
-		final Iterator<Entry<String, SamplerMetric>> iterator = getMetricsPerSampler().entrySet().iterator();
-
-		while (true) {
-			if (!iterator.hasNext()) {
-				break;
-			}
-
-			Entry<String, SamplerMetric> entry = iterator.next();
-			SamplerMetric metric = entry.getValue();
-			if ((entry.getKey()).equals("all")) {
-				// addCumulatedMetrics(metric);
-			} else {
+	/**
+	 * Sends the metrics of all completed time buckets, each bucket with its own timestamp, within one batch.
+	 *
+	 * @param flushAll if true, also the buckets which are not completed yet are sent (used at the end of the test)
+	 */
+	private void sendMetrics(boolean flushAll) {
+		final List<TimeBucketRing.TimeBucket> buckets = timeBuckets.flush(System.currentTimeMillis(), flushAll);
+		log.debug("{}: Sending metrics of {} time buckets", listenerName, buckets.size());
+
+		for (TimeBucketRing.TimeBucket bucket : buckets) {
+			for (Entry<String, TransactionMetric> entry : bucket.getMetrics().entrySet()) {
 				String transaction = entry.getKey();
-				log.debug("Checking if SampleLabel '{}' matches Regex '{}'", transaction, sendSamplersByRegex);
-				Matcher matcher = samplersToFilter.matcher(transaction);
-				if (matcher.find()) {
+				TransactionMetric metric = entry.getValue();
+				if (metric.isEmpty()) {
+					continue;
+				}
+				// the SLO rules and the summary of all transactions only contain the top level sample results
+				String parent = metric.getParent();
+				if (parent == null) {
+					for (SloRule sloRule : sloRules) {
+						sloRule.add(transaction, metric);
+					}
+				}
+				LabelRegistry.Label label = labels.get(transaction);
+				if (label.isSent()) {
 					log.debug("Adding SampleLabel '{}' to samplerMetric-List", transaction);
-					addMetricsForTransaction(transaction, metric);
+					if (otlpMetricExporter != null) {
+						otlpMetricExporter.add(transaction, parent, metric, bucket.getTimestamp());
+					} else {
+						transactionLines.addMetrics(label.getDimensionValue(),
+								parent == null ? null : SchemalessMetricSanitizer.sanitizeDimensionValue(parent), metric,
+								bucket.getTimestamp(), mintMetricSender::addMetric);
+					}
+					TransactionMetric testMetric = testMetrics.computeIfAbsent(transaction, k -> new TransactionMetric(parent));
+					testMetric.merge(metric);
+					if (openMetricsEndpoint != null) {
+						changedTestMetrics.put(transaction, testMetric);
+					}
+					if (parent == null) {
+						allTestMetrics.merge(metric);
+					}
 				} else {
 					log.debug("SampleLabel '{}' does not match Regex '{}'", transaction, sendSamplersByRegex);
 				}
 			}
-			metric.resetForTimeInterval();
+		}
+
+		for (String idleLabel : labels.nextInterval()) {
+			log.debug("{}: Forgetting idle SampleLabel '{}'", listenerName, idleLabel);
+			for (SloRule sloRule : sloRules) {
+				sloRule.forget(idleLabel);
+			}
+			if (subResults != null) {
+				subResults.forget(idleLabel);
+			}
 		}
 
 		UserMetric userMetrics = this.getUserMetrics();
@@ -230,43 +369,106 @@ public class MintBackendListener extends AbstractBackendListenerClient implement
 		addMetricLineForTest("jmeter.usermetrics.startedthreads", userMetrics.getStartedThreads());
 		addMetricLineForTest("jmeter.usermetrics.finishedthreads", userMetrics.getFinishedThreads());
 
+		samplingController.collect(this::addMetricLineForTest);
+
+		if (engineHealthCollector != null) {
+			engineHealthCollector.collect(this::addMetricLineForEngine);
+		}
+		evaluateSloRules(!flushAll);
+
+		if (flushAll) {
+			addSummaryMetrics();
+		}
+
+		if (openMetricsEndpoint != null) {
+			long failedRequests = mintMetricSender.getFailedRequests();
+			if (otlpMetricExporter != null) {
+				failedRequests += otlpMetricExporter.getFailedRequests();
+			}
+			openMetricsGauges.put("jmeter.listener.failedrequests", (double) failedRequests);
+			openMetricsEndpoint.publish(changedTestMetrics, openMetricsGauges);
+			changedTestMetrics.clear();
+		}
+
+		gaugeHeartbeat.nextInterval();
 		mintMetricSender.writeAndSendMetrics();
+		if (otlpMetricExporter != null) {
+			otlpMetricExporter.export();
+		}
+	}
+
+	/**
+	 * Adds the statistics of the whole test for every transaction and for all transactions together.
+	 */
+	private void addSummaryMetrics() {
+		log.info("{}: Sending summary of {} transactions", listenerName, testMetrics.size());
+		final long timestamp = System.currentTimeMillis();
+		testMetrics.forEach((transaction, metric) -> {
+			String parent = metric.getParent();
+			transactionLines.addSummary(SchemalessMetricSanitizer.sanitizeDimensionValue(transaction),
+					parent == null ? null : SchemalessMetricSanitizer.sanitizeDimensionValue(parent), metric, timestamp,
+					mintMetricSender::addMetric);
+		});
+		if (!allTestMetrics.isEmpty()) {
+			transactionLines.addSummary(ALL_TRANSACTIONS, null, allTestMetrics, timestamp, mintMetricSender::addMetric);
+		}
 	}
 
-	private void addMetricLineForTest(String metricKey, int metricValue) {
+	/**
+	 * Evaluates the SLO rules for the current send interval and stops the test on violation, if configured.
+	 */
+	private void evaluateSloRules(boolean stopTestOnViolation) {
+		boolean violated = false;
+		for (SloRule sloRule : sloRules) {
+			if (sloRule.evaluate()) {
+				violated = true;
+				log.warn("{}: SLO rule '{}' violated with value {}", listenerName, sloRule, sloRule.getLastValue());
+			}
+			addMetricLineForSlo(sloRule, "jmeter.usermetrics.slo.status", sloRule.isViolated() ? 1 : 0);
+			addMetricLineForSlo(sloRule, "jmeter.usermetrics.slo.value", sloRule.getLastValue());
+		}
+
+		if (violated && stopTestOnViolation && sloStopTest && !sloTestStopped) {
+			log.warn("{}: Stopping the test because of violated SLO rules", listenerName);
+			sloTestStopped = true;
+			StandardJMeterEngine.stopEngine();
+		}
+	}
+
+	private void addMetricLineForSlo(SloRule sloRule, String metricKey, double metricValue) {
+		if (!gaugeHeartbeat.shouldSend(metricKey + sloRule.getDefinition(), metricValue)) {
+			return;
+		}
 		MintMetricsLine line = new MintMetricsLine(metricKey);
 		addTestDimensions(line);
+		line.addDimension(new MintDimension("slo",
+				SchemalessMetricSanitizer.sanitizeDimensionValue(sloRule.getDefinition().replace('"', '\''))));
 		line.addGauge(new MintGauge(metricValue));
 		mintMetricSender.addMetric(line);
 	}
 
-	private void addMetricsForTransaction(String transaction, SamplerMetric metric) {
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.count", metric.getTotal());
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.success", metric.getSuccesses());
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.error", metric.getFailures());
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.hits", metric.getHits());
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.mintime", metric.getAllMinTime());
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.maxtime", metric.getAllMaxTime());
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.meantime", metric.getAllMean());
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.sentbytes", metric.getSentBytes());
-		addMetricLineForTransaction(transaction, "jmeter.usermetrics.transaction.receivedbytes", metric.getReceivedBytes());
-	}
-
-	private void addMetricLineForTransaction(String transaction, String metricKey, double metricValue) {
+	private void addMetricLineForTest(String metricKey, double metricValue) {
+		if (openMetricsEndpoint != null) {
+			openMetricsGauges.put(metricKey, metricValue);
+		}
+		if (!gaugeHeartbeat.shouldSend(metricKey, metricValue)) {
+			return;
+		}
 		MintMetricsLine line = new MintMetricsLine(metricKey);
-		addTransactionDimensions(transaction, line);
+		addTestDimensions(line);
 		line.addGauge(new MintGauge(metricValue));
 		mintMetricSender.addMetric(line);
 	}
 
-	private void addTransactionDimensions(String transaction, MintMetricsLine metricsLine) {
-		metricsLine.addDimension(new MintDimension("transaction", SchemalessMetricSanitizer.sanitizeDimensionValue(transaction)));
-		transactionDimensions.forEach((key, value) -> {
-			if (!key.trim().isEmpty() && !value.trim().isEmpty())
-				metricsLine.addDimension(
-						new MintDimension(SchemalessMetricSanitizer.sanitizeDimensionIdentifier(key),
-								SchemalessMetricSanitizer.sanitizeDimensionValue(value)));
-		});
+	private void addMetricLineForEngine(String metricKey, double metricValue) {
+		if (openMetricsEndpoint != null) {
+			openMetricsGauges.put(metricKey, metricValue);
+		}
+		MintMetricsLine line = new MintMetricsLine(metricKey);
+		addTestDimensions(line);
+		line.addDimension(new MintDimension("engine", SchemalessMetricSanitizer.sanitizeDimensionValue(engineName)));
+		line.addGauge(new MintGauge(metricValue));
+		mintMetricSender.addMetric(line);
 	}
 
 	private void addTestDimensions(MintMetricsLine metricsLine) {
@@ -17,90 +17,129 @@
 package com.dynatrace.jmeter.plugins;
 
 import com.dynatrace.mint.MintMetricsLine;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.concurrent.FutureCallback;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
-import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
-import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
-import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
-import org.apache.http.impl.nio.reactor.IOReactorConfig;
-import org.apache.http.nio.reactor.ConnectingIOReactor;
-import org.apache.http.util.EntityUtils;
 import org.apache.jmeter.report.utils.MetricUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class MintMetricSender {
 	private static final Logger log = LoggerFactory.getLogger(MintMetricSender.class);
-	private static final String AUTHORIZATION_HEADER_NAME = "Authorization";
-	private static final String AUTHORIZATION_HEADER_VALUE = "Api-token ";
-	private static final int CONNECT_TIMEOUT = 10_000;
-	private static final int SOCKET_TIMEOUT = 30_000;
-	private static final int MAX_CONNECTIONS = 10;
-	private static final int MAX_THREADS = 5;
+	private static final String CONTENT_TYPE = "text/plain; charset=UTF-8";
+	private static final int MAX_IN_FLIGHT_REQUESTS = 10;
+	private static final long LATENCY_THRESHOLD_MILLIS = 5_000;
+	// limits for retrying throttled or failed messages
+	static final int MAX_ATTEMPTS = 5;
+	static final long MAX_PENDING_BYTES = 32L * 1048576;
 	// limits for sending a single message
 	static final int MAX_LINES_PER_MESSAGE = 1000;
 	static final int MAX_MESSAGE_SIZE_BYTES = 1048576;
-	private CloseableHttpAsyncClient httpClient;
-	private HttpPost httpRequest;
+	private MetricTransport transport;
+	private String transportType = MetricTransport.APACHE;
 	private URL url;
-	private String token;
 	private String name;
-	private Future<HttpResponse> lastRequest;
 	private List<MintMetricsLine> metrics = new CopyOnWriteArrayList<>();
+	private int maxInFlightRequests = MAX_IN_FLIGHT_REQUESTS;
+	private double maxLinesPerSecond;
+	private double maxBytesPerSecond;
+	private IngestRateController rateController;
+	private ScheduledExecutorService dispatchScheduler;
+	private boolean dispatchScheduled;
+	private boolean blockWhenFull;
+	// messages which wait for the rate controller, including the throttled messages which are retried
+	private final Deque<PendingMessage> pendingMessages = new ArrayDeque<>();
+	private long pendingBytes;
+	private final AtomicLong failedRequests = new AtomicLong();
 
 	public MintMetricSender() {
 	}
 
-	public synchronized void setup(String name, String mintIngestUrl, String mintIngestToken) throws Exception {
-		this.url = new URL(mintIngestUrl);
-		this.token = mintIngestToken;
-		this.name = name;
+	/**
+	 * Limits the number of concurrent requests, the rate controller adapts the limit between 1 and this value.
+	 * It is also the size of the connection pool of the HTTP/1.1 transport. Has to be called before {@link #setup}.
+	 */
+	public synchronized void setMaxInFlightRequests(int maxInFlightRequests) {
+		this.maxInFlightRequests = maxInFlightRequests;
+	}
+
+	/**
+	 * Limits the lines and bytes sent per second, 0 means no limit. Has to be called before {@link #setup}.
+	 */
+	public synchronized void setRateLimits(double maxLinesPerSecond, double maxBytesPerSecond) {
+		this.maxLinesPerSecond = maxLinesPerSecond;
+		this.maxBytesPerSecond = maxBytesPerSecond;
+	}
+
+	/**
+	 * Selects the HTTP transport, {@link MetricTransport#APACHE} (default) or {@link MetricTransport#HTTP2}.
+	 * Has to be called before {@link #setup}.
+	 */
+	public synchronized void setTransport(String transportType) {
+		this.transportType = transportType;
+	}
 
-		IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(MAX_THREADS).setConnectTimeout(CONNECT_TIMEOUT)
-				.setSoTimeout(SOCKET_TIMEOUT)
-				.build();
-		ConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(ioReactorConfig);
-		PoolingNHttpClientConnectionManager connManager = new PoolingNHttpClientConnectionManager(ioReactor);
-		httpClient = HttpAsyncClientBuilder.create().setConnectionManager(connManager).setMaxConnPerRoute(MAX_CONNECTIONS)
-				.setMaxConnTotal(MAX_CONNECTIONS)
-				.setUserAgent("ApacheJMeter 5").disableCookieManagement().disableConnectionState().build();
-		httpRequest = createRequest(this.url, this.token);
-		httpClient.start();
+	/**
+	 * Lets sending block while too many messages are pending, instead of dropping the oldest messages.
+	 */
+	public synchronized void setBlockWhenFull(boolean blockWhenFull) {
+		this.blockWhenFull = blockWhenFull;
 	}
 
-	private HttpPost createRequest(URL url, String token) throws URISyntaxException {
-		RequestConfig defaultRequestConfig = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT)
-				.setSocketTimeout(SOCKET_TIMEOUT)
-				.setConnectionRequestTimeout(CONNECT_TIMEOUT).build();
-		HttpPost currentHttpRequest = new HttpPost(url.toURI());
-		currentHttpRequest.setConfig(defaultRequestConfig);
-		if (StringUtils.isNotBlank(token)) {
-			currentHttpRequest.setHeader(AUTHORIZATION_HEADER_NAME, AUTHORIZATION_HEADER_VALUE + token);
+	/**
+	 * Waits until all pending messages have been sent and all requests are completed.
+	 *
+	 * @return true if all requests have been completed within the timeout
+	 */
+	public synchronized boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!pendingMessages.isEmpty() || rateController.getInFlight() > 0) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
 		}
+		return true;
+	}
+
+	/**
+	 * @return the number of requests which failed or have not been accepted by the server
+	 */
+	public long getFailedRequests() {
+		return failedRequests.get();
+	}
+
+	public synchronized void setup(String name, String mintIngestUrl, String mintIngestToken) throws Exception {
+		this.url = new URL(mintIngestUrl);
+		this.name = name;
 
-		log.debug("{}: Created MintMetricSender with url: {}", name, url);
-		return currentHttpRequest;
+		transport = MetricTransport.create(name, transportType, url, mintIngestToken, maxInFlightRequests);
+		log.debug("{}: Created MintMetricSender with url: {} and {}", name, url, transport.getClass().getSimpleName());
+		rateController = new IngestRateController(maxLinesPerSecond, maxBytesPerSecond, maxInFlightRequests,
+				LATENCY_THRESHOLD_MILLIS, System.nanoTime());
+		dispatchScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "MintMetricSender-dispatch");
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 	public synchronized void addMetric(MintMetricsLine line) {
@@ -121,40 +160,23 @@ public class MintMetricSender {
 			log.info("{}: Splitted the message into {} requests", name, splitMessages.size());
 		}
 		for (String splitMessage : splitMessages) {
-			writeAndSendMetrics(splitMessage);
+			enqueue(new PendingMessage(splitMessage));
+			dispatch();
 		}
 	}
 
 	public synchronized void checkConnection() throws MintConnectionException {
 		try {
-			if (httpRequest == null) {
-				httpRequest = this.createRequest(this.url, this.token);
-			}
 			log.debug("{}: Sending empty metrics", name);
-			httpRequest.setEntity(new StringEntity("", StandardCharsets.UTF_8));
-			lastRequest = httpClient.execute(httpRequest, new FutureCallback<HttpResponse>() {
-				public void completed(HttpResponse response) {
-				}
-
-				public void failed(Exception ex) {
-				}
-
-				public void cancelled() {
-				}
-			});
-
-		} catch (URISyntaxException ex) {
-			//
-		}
-		try {
-            final HttpResponse lastResponse = lastRequest.get(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
-            int code = lastResponse.getStatusLine().getStatusCode();
+            final MetricTransport.Response lastResponse = transport.send(new byte[0], CONTENT_TYPE)
+                    .get(MetricTransport.CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+            int code = lastResponse.getStatusCode();
             // ok, message because of empty request: responseCode: 400, responseBody: {"linesOk":0,"linesInvalid":0,"error":{"code":400,"message":"empty request","invalidLines":[]}}
             if (code >= 200 && code <= 400) {
                 log.debug("{}: Successfully checked connection", name);
             } else {
                 log.warn("{}: Error writing metrics to MINT Url: {}, responseCode: {}, responseBody: {}",
-                        name, new Object[]{url, code, getBody(lastResponse)});
+                        name, new Object[]{url, code, lastResponse.getBody()});
 
                 switch (code) {
                     case 401:
@@ -172,42 +194,125 @@ public class MintMetricSender {
 		}
 	}
 
-	private void writeAndSendMetrics(final String message) {
-		try {
-			if (httpRequest == null) {
-				httpRequest = this.createRequest(url, token);
+	private synchronized void enqueue(PendingMessage message) {
+		if (blockWhenFull) {
+			// waiting releases the monitor, so the completed requests and the scheduled dispatch can drain the queue
+			dispatch();
+			try {
+				while (pendingBytes > MAX_PENDING_BYTES) {
+					wait();
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
 			}
+		}
+		pendingMessages.addLast(message);
+		pendingBytes += message.bytes;
+		// unless blocking, drop the oldest messages if the server does not accept the messages for a long time
+		while (!blockWhenFull && pendingBytes > MAX_PENDING_BYTES && pendingMessages.size() > 1) {
+			final PendingMessage dropped = pendingMessages.pollFirst();
+			pendingBytes -= dropped.bytes;
+			failedRequests.incrementAndGet();
+			log.error("{}: Too many pending metrics, dropping {} metrics", name, dropped.lines);
+		}
+	}
 
-			log.debug("{}: Sending metrics: {}", name, message);
-			final int nrLines = getLineCount(message);
-
-			httpRequest.setEntity(new StringEntity(message, StandardCharsets.UTF_8));
-			lastRequest = httpClient.execute(httpRequest, new FutureCallback<HttpResponse>() {
-				public void completed(HttpResponse response) {
-					int code = response.getStatusLine().getStatusCode();
-					if (MetricUtils.isSuccessCode(code)) {
-						log.info("{}: Success, number of metrics written: {}", name, nrLines);
-						log.debug("{}: Last message: {}", name, message);
-					} else {
-						log.error("{}: Error writing metrics to MINT Url: {}, responseCode: {}, responseBody: {}",
-								name, new Object[] { url, code, getBody(response) });
-						log.info("{}: Last message: {}", name, message);
-					}
+	/**
+	 * Sends the pending messages, as far as the rate controller allows it.
+	 */
+	private synchronized void dispatch() {
+		while (!pendingMessages.isEmpty()) {
+			final PendingMessage message = pendingMessages.peekFirst();
+			final long waitNanos = rateController.tryAcquire(message.lines, message.bytes, System.nanoTime());
+			if (waitNanos == IngestRateController.WAIT_FOR_COMPLETION) {
+				// the completion of a request dispatches again
+				return;
+			}
+			if (waitNanos > 0) {
+				scheduleDispatch(waitNanos);
+				return;
+			}
+			pendingMessages.pollFirst();
+			pendingBytes -= message.bytes;
+			send(message);
+			// wakes up the blocked enqueue
+			notifyAll();
+		}
+	}
 
+	private void scheduleDispatch(long delayNanos) {
+		if (!dispatchScheduled) {
+			dispatchScheduled = true;
+			dispatchScheduler.schedule(() -> {
+				synchronized (this) {
+					dispatchScheduled = false;
 				}
+				dispatch();
+			}, delayNanos, TimeUnit.NANOSECONDS);
+		}
+	}
 
-				public void failed(Exception ex) {
-					log.error("{}: failed to send data to MINT server: {}", name, ex.getMessage());
+	private void send(final PendingMessage message) {
+		final long start = System.nanoTime();
+		log.debug("{}: Sending metrics: {}", name, message.message);
+		transport.send(message.message.getBytes(StandardCharsets.UTF_8), CONTENT_TYPE).whenComplete((response, ex) -> {
+			if (ex == null) {
+				completed(message, response, start);
+			} else {
+				rateController.onFailure(getLatencyMillis(start), System.nanoTime());
+				final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+				if (cause instanceof CancellationException) {
+					failedRequests.incrementAndGet();
+					log.warn("{}: Request to MINT server was cancelled", name);
+				} else {
+					log.error("{}: failed to send data to MINT server: {}", name, cause.getMessage());
+					retry(message);
 				}
+			}
+			completeRequest();
+		});
+	}
 
-				public void cancelled() {
-					log.warn("{}: Request to MINT server was cancelled", nrLines);
-				}
-			});
-		} catch (URISyntaxException ex) {
-			log.error(ex.getMessage(), ex);
+	private void completed(PendingMessage message, MetricTransport.Response response, long start) {
+		int code = response.getStatusCode();
+		rateController.onResponse(code, getLatencyMillis(start), response.getRetryAfter(), System.nanoTime());
+		if (MetricUtils.isSuccessCode(code)) {
+			log.info("{}: Success, number of metrics written: {}", name, message.lines);
+			log.debug("{}: Last message: {}", name, message.message);
+		} else if (IngestRateController.isThrottled(code)) {
+			log.warn("{}: Throttled by MINT server with responseCode: {}, Retry-After: {}, requests in flight: {}",
+					name, code, response.getRetryAfter(), rateController.getInFlightLimit());
+			retry(message);
+		} else {
+			failedRequests.incrementAndGet();
+			log.error("{}: Error writing metrics to MINT Url: {}, responseCode: {}, responseBody: {}",
+					name, new Object[] { url, code, response.getBody() });
+			log.info("{}: Last message: {}", name, message.message);
+		}
+	}
+
+	/**
+	 * Adds a throttled or failed message to the front of the pending messages, until the maximum attempts are reached.
+	 */
+	private synchronized void retry(PendingMessage message) {
+		if (++message.attempts >= MAX_ATTEMPTS) {
+			failedRequests.incrementAndGet();
+			log.error("{}: Dropping {} metrics after {} attempts", name, message.lines, message.attempts);
+			return;
 		}
+		pendingMessages.addFirst(message);
+		pendingBytes += message.bytes;
+	}
 
+	private void completeRequest() {
+		synchronized (this) {
+			notifyAll();
+		}
+		dispatch();
+	}
+
+	private static long getLatencyMillis(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
 	}
 
 	List<String> splitMessages(final List<MintMetricsLine> copyMetrics) {
@@ -252,35 +357,26 @@ public class MintMetricSender {
 		return lines;
 	}
 
-	private static String getBody(HttpResponse response) {
-		String body = "";
-
-		try {
-			if (response != null && response.getEntity() != null) {
-				body = EntityUtils.toString(response.getEntity());
-			}
-		} catch (Exception ex) {
-		}
-
-		return body;
-	}
-
 	public void destroy() {
 		log.info("{}: Destroying", name);
 
-		if (lastRequest != null) {
+		if (rateController != null) {
 			try {
-				lastRequest.get(5L, TimeUnit.SECONDS);
-			} catch (ExecutionException | TimeoutException | InterruptedException ex) {
+				if (!awaitCompletion(5L, TimeUnit.SECONDS)) {
+					log.error("{}: Timeout waiting for last request to be send to MINT server", name);
+				}
+			} catch (InterruptedException ex) {
 				log.error("{}: Error waiting for last request to be send to MINT server: {}", name, ex.getMessage());
+				Thread.currentThread().interrupt();
 			}
 		}
-
-		if (httpRequest != null) {
-			httpRequest.abort();
+		if (dispatchScheduler != null) {
+			dispatchScheduler.shutdownNow();
 		}
 
-		IOUtils.closeQuietly(httpClient);
+		if (transport != null) {
+			transport.close();
+		}
 	}
 
     public void setupMetrics() {
@@ -298,12 +394,61 @@ public class MintMetricSender {
                 new MintMetricsLine("jmeter.usermetrics.transaction.maxtime", "JMeter - max response time", "MilliSecond", "the maximal elapsed time for requests within sliding window"),
                 new MintMetricsLine("jmeter.usermetrics.transaction.meantime", "JMeter - mean response time", "MilliSecond", "the arithmetic mean of the elapsed time"),
                 new MintMetricsLine("jmeter.usermetrics.transaction.sentbytes", "JMeter - sent bytes", "Byte", "the number of sent bytes"),
-                new MintMetricsLine("jmeter.usermetrics.transaction.receivedbytes", "JMeter - received bytes", "Byte", "the number of received bytes")
+                new MintMetricsLine("jmeter.usermetrics.transaction.receivedbytes", "JMeter - received bytes", "Byte", "the number of received bytes"),
+                new MintMetricsLine("jmeter.usermetrics.transaction.phase.p50", "JMeter - median phase time", "MilliSecond", "the median of the connect, time to first byte or processing time"),
+                new MintMetricsLine("jmeter.usermetrics.transaction.phase.p90", "JMeter - 90th percentile phase time", "MilliSecond", "the 90th percentile of the connect, time to first byte or processing time"),
+                new MintMetricsLine("jmeter.usermetrics.transaction.phase.p99", "JMeter - 99th percentile phase time", "MilliSecond", "the 99th percentile of the connect, time to first byte or processing time"),
+                new MintMetricsLine("jmeter.usermetrics.summary.count", "JMeter - test number of requests", "count", "the total number of requests of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.error", "JMeter - test failed requests", "count", "the number of failed requests of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.hits", "JMeter - test number of hits", "count", "the number of hits to the server of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.mintime", "JMeter - test min response time", "MilliSecond", "the minimal elapsed time of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.maxtime", "JMeter - test max response time", "MilliSecond", "the maximal elapsed time of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.meantime", "JMeter - test mean response time", "MilliSecond", "the arithmetic mean of the elapsed time of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.p50", "JMeter - test median response time", "MilliSecond", "the median of the elapsed time of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.p90", "JMeter - test 90th percentile response time", "MilliSecond", "the 90th percentile of the elapsed time of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.p95", "JMeter - test 95th percentile response time", "MilliSecond", "the 95th percentile of the elapsed time of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.p99", "JMeter - test 99th percentile response time", "MilliSecond", "the 99th percentile of the elapsed time of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.sentbytes", "JMeter - test sent bytes", "Byte", "the number of sent bytes of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.summary.receivedbytes", "JMeter - test received bytes", "Byte", "the number of received bytes of the whole test"),
+                new MintMetricsLine("jmeter.usermetrics.slo.status", "JMeter - SLO status", "count", "1 if the SLO rule is violated, otherwise 0"),
+                new MintMetricsLine("jmeter.usermetrics.slo.value", "JMeter - SLO value", null, "the value of the SLO rule metric within the last interval, in the unit of the rule"),
+                new MintMetricsLine("jmeter.listener.batchsize", "JMeter listener - batch size", "count", "the maximum number of samples handled in one batch"),
+                new MintMetricsLine("jmeter.listener.batchtime", "JMeter listener - batch time", "MilliSecond", "the mean time spent handling one batch"),
+                new MintMetricsLine("jmeter.listener.samplerate", "JMeter listener - sample rate", "PerSecond", "the number of samples received per second"),
+                new MintMetricsLine("jmeter.listener.samplingrate", "JMeter listener - sampling rate", "Ratio", "the fraction of samples which are aggregated"),
+                new MintMetricsLine("jmeter.engine.gc.count", "JMeter engine - GC count", "count", "the number of garbage collections of the load generator"),
+                new MintMetricsLine("jmeter.engine.gc.time", "JMeter engine - GC time", "MilliSecond", "the time spent in garbage collections of the load generator"),
+                new MintMetricsLine("jmeter.engine.heap.used", "JMeter engine - used heap", "Byte", "the used heap memory of the load generator"),
+                new MintMetricsLine("jmeter.engine.allocationrate", "JMeter engine - allocation rate", "BytePerSecond", "the memory allocation rate of the load generator"),
+                new MintMetricsLine("jmeter.engine.cpu.process", "JMeter engine - process CPU", "Percent", "the CPU usage of the load generator process"),
+                new MintMetricsLine("jmeter.engine.cpu.system", "JMeter engine - system CPU", "Percent", "the CPU usage of the load generator host"),
+                new MintMetricsLine("jmeter.engine.threads", "JMeter engine - threads", "count", "the number of live threads of the load generator"),
+                new MintMetricsLine("jmeter.engine.safepoint.time", "JMeter engine - safepoint time", "MilliSecond", "the time spent in safepoints of the load generator")
         ));
+        MintMetricsLine responseCodes = new MintMetricsLine("jmeter.usermetrics.transaction.responsecode", "JMeter - response codes", "count", "the number of requests per response code");
+        responseCodes.setCounter(0);
+        metrics.add(responseCodes);
+        MintMetricsLine failures = new MintMetricsLine("jmeter.usermetrics.transaction.failure", "JMeter - failure reasons", "count", "the number of failed requests per failure class");
+        failures.setCounter(0);
+        metrics.add(failures);
         String metricsString = metrics.stream()
                 .map(line -> line.printMessage(true) + System.getProperty("line.separator"))
                 .collect(Collectors.joining());
-        writeAndSendMetrics(metricsString);
+        enqueue(new PendingMessage(metricsString));
+        dispatch();
         log.info("{}: Successfully send metrics metadata", name);
     }
+
+	private class PendingMessage {
+		private final String message;
+		private final int lines;
+		private final int bytes;
+		private int attempts;
+
+		private PendingMessage(String message) {
+			this.message = message;
+			this.lines = getLineCount(message);
+			this.bytes = message.getBytes(StandardCharsets.UTF_8).length;
+		}
+	}
 }
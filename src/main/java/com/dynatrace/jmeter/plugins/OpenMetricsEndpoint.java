@@ -0,0 +1,228 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the aggregates of the listener in the OpenMetrics text format at {@code http://<host>:<port>/metrics}.
+ * The endpoint only listens on the loopback interface, unless another bind address is given.
+ * <p>
+ * The listener passes the whole-test aggregates of the transactions which changed in a send interval and the plugin
+ * gauges of the interval to {@link #publish}. Only the lines of the changed transactions are rendered again, the
+ * response body is assembled from the cached lines on the first scrape of a snapshot and reused by all further scrapes.
+ */
+class OpenMetricsEndpoint {
+	private static final Logger log = LoggerFactory.getLogger(OpenMetricsEndpoint.class);
+	private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+	private static final double[] QUANTILES = { 50, 90, 95, 99 };
+	private static final String[][] FAMILIES = {
+			{ "jmeter_transaction_requests", "counter", "number of requests" },
+			{ "jmeter_transaction_errors", "counter", "number of failed requests" },
+			{ "jmeter_transaction_hits", "counter", "number of hits to the server" },
+			{ "jmeter_transaction_sent_bytes", "counter", "number of bytes sent" },
+			{ "jmeter_transaction_received_bytes", "counter", "number of bytes received" },
+			{ "jmeter_transaction_duration_milliseconds", "summary", "elapsed time of the requests" },
+			{ "jmeter_transaction_responses", "counter", "number of requests per response code" },
+			{ "jmeter_transaction_failures", "counter", "number of failed requests per failure class" } };
+	private static final byte[][] FAMILY_HEADERS = new byte[FAMILIES.length][];
+
+	static {
+		for (int i = 0; i < FAMILIES.length; i++) {
+			String unit = FAMILIES[i][0].endsWith("_bytes") ? "# UNIT " + FAMILIES[i][0] + " bytes\n"
+					: FAMILIES[i][0].endsWith("_milliseconds") ? "# UNIT " + FAMILIES[i][0] + " milliseconds\n" : "";
+			FAMILY_HEADERS[i] = ("# TYPE " + FAMILIES[i][0] + " " + FAMILIES[i][1] + "\n" + unit
+					+ "# HELP " + FAMILIES[i][0] + " " + FAMILIES[i][2] + "\n").getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	private final String name;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	// rendered lines per transaction, one entry for every family
+	private final Map<String, byte[][]> transactionLines = new TreeMap<>();
+	private volatile Snapshot snapshot = new Snapshot(new byte[0][][], new byte[0]);
+
+	/**
+	 * @param bindAddress the address of the interface to listen on, e.g. {@code 0.0.0.0} for remote scraping, an empty
+	 *                    address selects the loopback interface
+	 */
+	OpenMetricsEndpoint(String name, String bindAddress, int port) throws IOException {
+		this.name = name;
+		this.server = HttpServer.create(bindAddress.trim().isEmpty()
+				? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+				: new InetSocketAddress(bindAddress.trim(), port), 0);
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "OpenMetricsEndpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/metrics", this::handle);
+	}
+
+	void start() {
+		server.start();
+		log.info("{}: Serving OpenMetrics at {}", name, getAddress());
+	}
+
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Publishes a new snapshot.
+	 *
+	 * @param changedTransactions the whole-test aggregates of the transactions which changed since the last snapshot
+	 * @param gauges the plugin gauges of the interval, keyed by the metric key of the MINT line
+	 */
+	synchronized void publish(Map<String, TransactionMetric> changedTransactions, Map<String, Double> gauges) {
+		for (Map.Entry<String, TransactionMetric> entry : changedTransactions.entrySet()) {
+			transactionLines.put(entry.getKey(), render(entry.getKey(), entry.getValue()));
+		}
+		final StringBuilder gaugeLines = new StringBuilder();
+		gauges.forEach((key, value) -> {
+			final String metric = key.replaceAll("[^a-zA-Z0-9_]", "_");
+			gaugeLines.append("# TYPE ").append(metric).append(" gauge\n")
+					.append(metric).append(' ').append(format(value)).append('\n');
+		});
+		snapshot = new Snapshot(transactionLines.values().toArray(new byte[0][][]),
+				gaugeLines.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			final byte[] body = snapshot.getBody();
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (IOException ex) {
+			log.debug("{}: Failed to serve OpenMetrics: {}", name, ex.getMessage());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static byte[][] render(String transaction, TransactionMetric metric) {
+		final String labels = "transaction=\"" + escape(transaction) + "\"";
+		final byte[][] lines = new byte[FAMILIES.length][];
+		lines[0] = counter(0, labels, metric.getTotal());
+		lines[1] = counter(1, labels, metric.getFailures());
+		lines[2] = counter(2, labels, metric.getHits());
+		lines[3] = counter(3, labels, metric.getSentBytes());
+		lines[4] = counter(4, labels, metric.getReceivedBytes());
+
+		final String family = FAMILIES[5][0];
+		final StringBuilder summary = new StringBuilder();
+		for (double quantile : QUANTILES) {
+			summary.append(family).append('{').append(labels).append(",quantile=\"").append(quantile / 100).append("\"} ")
+					.append(format(metric.getPercentile(quantile))).append('\n');
+		}
+		summary.append(family).append("_sum{").append(labels).append("} ").append(metric.getSumTime()).append('\n');
+		summary.append(family).append("_count{").append(labels).append("} ").append(metric.getElapsedTimes().getTotalCount())
+				.append('\n');
+		lines[5] = summary.toString().getBytes(StandardCharsets.UTF_8);
+
+		final ResponseCodeCounts responseCodes = metric.getResponseCodes();
+		final StringBuilder codes = new StringBuilder();
+		final StringBuilder failures = new StringBuilder();
+		if (responseCodes != null) {
+			responseCodes.forEachCode((code, count) -> codes.append(FAMILIES[6][0]).append("_total{").append(labels)
+					.append(",code=\"").append(ResponseCodeCounts.getCodeName(code)).append("\"} ").append(count).append('\n'));
+			for (int failureClass = 0; failureClass < ResponseCodeCounts.FAILURE_CLASSES.length; failureClass++) {
+				if (responseCodes.getFailures(failureClass) > 0) {
+					failures.append(FAMILIES[7][0]).append("_total{").append(labels).append(",reason=\"")
+							.append(ResponseCodeCounts.FAILURE_CLASSES[failureClass]).append("\"} ")
+							.append(responseCodes.getFailures(failureClass)).append('\n');
+				}
+			}
+		}
+		lines[6] = codes.toString().getBytes(StandardCharsets.UTF_8);
+		lines[7] = failures.toString().getBytes(StandardCharsets.UTF_8);
+		return lines;
+	}
+
+	private static byte[] counter(int family, String labels, long value) {
+		return (FAMILIES[family][0] + "_total{" + labels + "} " + value + "\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+	}
+
+	/**
+	 * The rendered lines of one send interval, the body is assembled once on the first scrape.
+	 */
+	private static class Snapshot {
+		private final byte[][][] transactions;
+		private final byte[] gauges;
+		private byte[] body;
+
+		private Snapshot(byte[][][] transactions, byte[] gauges) {
+			this.transactions = transactions;
+			this.gauges = gauges;
+		}
+
+		private synchronized byte[] getBody() {
+			if (body == null) {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				if (transactions.length > 0) {
+					for (int family = 0; family < FAMILIES.length; family++) {
+						out.write(FAMILY_HEADERS[family], 0, FAMILY_HEADERS[family].length);
+						for (byte[][] lines : transactions) {
+							out.write(lines[family], 0, lines[family].length);
+						}
+					}
+				}
+				out.write(gauges, 0, gauges.length);
+				final byte[] eof = "# EOF\n".getBytes(StandardCharsets.UTF_8);
+				out.write(eof, 0, eof.length);
+				body = out.toByteArray();
+			}
+			return body;
+		}
+	}
+}
@@ -0,0 +1,380 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes transaction aggregates as OTLP {@code ExportMetricsServiceRequest} (opentelemetry/proto/metrics/v1).
+ * <p>
+ * The test and transaction dimensions are the same for all data points, so they become resource attributes and only
+ * the transaction is an attribute of the data points. Every metric is written once, with one data point per transaction
+ * and time bucket. Counts are delta sums, the elapsed times are a delta histogram whose explicit bounds are the bounds
+ * of the non empty {@link LatencyHistogram} buckets, merged to {@code 2^HISTOGRAM_SUB_BUCKET_BITS} buckets per power
+ * of two to keep the requests small. The request is written into a reusable {@link ProtobufWriter}.
+ */
+class OtlpMetricEncoder {
+	// ExportMetricsServiceRequest, ResourceMetrics, ScopeMetrics
+	private static final int REQUEST_RESOURCE_METRICS = 1;
+	private static final int RESOURCE_METRICS_RESOURCE = 1;
+	private static final int RESOURCE_METRICS_SCOPE_METRICS = 2;
+	private static final int RESOURCE_ATTRIBUTES = 1;
+	private static final int SCOPE_METRICS_SCOPE = 1;
+	private static final int SCOPE_METRICS_METRICS = 2;
+	private static final int SCOPE_NAME = 1;
+	// Metric, Sum, Histogram
+	private static final int METRIC_NAME = 1;
+	private static final int METRIC_DESCRIPTION = 2;
+	private static final int METRIC_UNIT = 3;
+	private static final int METRIC_SUM = 7;
+	private static final int METRIC_HISTOGRAM = 9;
+	private static final int DATA_POINTS = 1;
+	private static final int AGGREGATION_TEMPORALITY = 2;
+	private static final int SUM_IS_MONOTONIC = 3;
+	private static final int AGGREGATION_TEMPORALITY_DELTA = 1;
+	// NumberDataPoint, HistogramDataPoint
+	private static final int POINT_START_TIME = 2;
+	private static final int POINT_TIME = 3;
+	private static final int NUMBER_POINT_AS_INT = 6;
+	private static final int NUMBER_POINT_ATTRIBUTES = 7;
+	private static final int HISTOGRAM_POINT_COUNT = 4;
+	private static final int HISTOGRAM_POINT_SUM = 5;
+	private static final int HISTOGRAM_POINT_BUCKET_COUNTS = 6;
+	private static final int HISTOGRAM_POINT_EXPLICIT_BOUNDS = 7;
+	private static final int HISTOGRAM_POINT_ATTRIBUTES = 9;
+	private static final int HISTOGRAM_POINT_MIN = 11;
+	private static final int HISTOGRAM_POINT_MAX = 12;
+	// KeyValue, AnyValue
+	private static final int KEY_VALUE_KEY = 1;
+	private static final int KEY_VALUE_VALUE = 2;
+	private static final int ANY_VALUE_STRING = 1;
+
+	private static final String SCOPE = "com.dynatrace.jmeter.plugins";
+	private static final int HISTOGRAM_SUB_BUCKET_BITS = 3;
+	private static final String[][] SUMS = {
+			{ "jmeter.usermetrics.transaction.count", "number of requests", "1" },
+			{ "jmeter.usermetrics.transaction.success", "number of successful requests", "1" },
+			{ "jmeter.usermetrics.transaction.error", "number of failed requests", "1" },
+			{ "jmeter.usermetrics.transaction.hits", "number of hits to the server", "1" },
+			{ "jmeter.usermetrics.transaction.sentbytes", "number of bytes sent", "By" },
+			{ "jmeter.usermetrics.transaction.receivedbytes", "number of bytes received", "By" } };
+
+	private final Map<String, String> resourceAttributes;
+	private final Map<String, String> transactionAttributes;
+	private final long bucketNanos;
+	private final ProtobufWriter writer;
+	private final LatencyHistogram.BucketConsumer bucketCollector = this::collectBucket;
+	private final ResponseCodeCounts.CodeConsumer codeWriter = this::writeCodePoint;
+	// data points of the current request
+	private String[] transactions = new String[16];
+	private String[] parents = new String[16];
+	private TransactionMetric[] metrics = new TransactionMetric[16];
+	private long[] timestamps = new long[16];
+	private int pointCount;
+	// buckets of the current histogram data point
+	private long[] bucketCounts = new long[16];
+	private double[] explicitBounds = new double[16];
+	private int boundCount;
+	private long lastUpperBound;
+	// the data point of the response codes which are written
+	private int codePoint;
+
+	/**
+	 * @param resourceAttributes the attributes of the resource, e.g. the test dimensions
+	 * @param transactionAttributes the attributes of all transactions, they are also added to the resource
+	 * @param bucketMillis the duration of a time bucket, used as start time of the data points
+	 */
+	OtlpMetricEncoder(Map<String, String> resourceAttributes, Map<String, String> transactionAttributes, long bucketMillis) {
+		this.resourceAttributes = resourceAttributes;
+		this.transactionAttributes = transactionAttributes;
+		this.bucketNanos = TimeUnit.MILLISECONDS.toNanos(bucketMillis);
+		this.writer = new ProtobufWriter(64 * 1024);
+	}
+
+	/**
+	 * Adds the aggregate of a transaction in the time bucket ending at the timestamp.
+	 */
+	void add(String transaction, TransactionMetric metric, long timestampMillis) {
+		add(transaction, null, metric, timestampMillis);
+	}
+
+	/**
+	 * Adds the aggregate of a sub-result in the time bucket ending at the timestamp.
+	 *
+	 * @param parent the label path of the parent transaction, or null for a top level transaction
+	 */
+	void add(String transaction, String parent, TransactionMetric metric, long timestampMillis) {
+		if (pointCount == transactions.length) {
+			transactions = Arrays.copyOf(transactions, 2 * pointCount);
+			parents = Arrays.copyOf(parents, 2 * pointCount);
+			metrics = Arrays.copyOf(metrics, 2 * pointCount);
+			timestamps = Arrays.copyOf(timestamps, 2 * pointCount);
+		}
+		transactions[pointCount] = transaction;
+		parents[pointCount] = parent;
+		metrics[pointCount] = metric;
+		timestamps[pointCount] = TimeUnit.MILLISECONDS.toNanos(timestampMillis);
+		pointCount++;
+	}
+
+	boolean isEmpty() {
+		return pointCount == 0;
+	}
+
+	/**
+	 * Encodes the added aggregates and removes them.
+	 *
+	 * @return the writer containing the request, it is reused by the next call
+	 */
+	ProtobufWriter encode() {
+		writer.reset();
+		final int resourceMetrics = writer.beginMessage(REQUEST_RESOURCE_METRICS);
+		final int resource = writer.beginMessage(RESOURCE_METRICS_RESOURCE);
+		writeAttributes(RESOURCE_ATTRIBUTES, resourceAttributes);
+		writeAttributes(RESOURCE_ATTRIBUTES, transactionAttributes);
+		writer.endMessage(resource);
+
+		final int scopeMetrics = writer.beginMessage(RESOURCE_METRICS_SCOPE_METRICS);
+		final int scope = writer.beginMessage(SCOPE_METRICS_SCOPE);
+		writer.writeString(SCOPE_NAME, SCOPE);
+		writer.endMessage(scope);
+		for (int i = 0; i < SUMS.length; i++) {
+			writeSum(i);
+		}
+		writeHistograms();
+		writeResponseCodes();
+		writer.endMessage(scopeMetrics);
+		writer.endMessage(resourceMetrics);
+
+		Arrays.fill(transactions, 0, pointCount, null);
+		Arrays.fill(parents, 0, pointCount, null);
+		Arrays.fill(metrics, 0, pointCount, null);
+		pointCount = 0;
+		return writer;
+	}
+
+	private void writeSum(int sum) {
+		final int metric = beginMetric(SUMS[sum][0], SUMS[sum][1], SUMS[sum][2]);
+		final int data = writer.beginMessage(METRIC_SUM);
+		for (int i = 0; i < pointCount; i++) {
+			final int point = writer.beginMessage(DATA_POINTS);
+			writer.writeFixed64(POINT_START_TIME, timestamps[i] - bucketNanos);
+			writer.writeFixed64(POINT_TIME, timestamps[i]);
+			writer.writeFixed64(NUMBER_POINT_AS_INT, getSumValue(sum, metrics[i]));
+			writeTransactionAttributes(NUMBER_POINT_ATTRIBUTES, i);
+			writer.endMessage(point);
+		}
+		writer.writeVarint(AGGREGATION_TEMPORALITY, AGGREGATION_TEMPORALITY_DELTA);
+		writer.writeVarint(SUM_IS_MONOTONIC, 1);
+		writer.endMessage(data);
+		writer.endMessage(metric);
+	}
+
+	private void writeResponseCodes() {
+		boolean hasResponseCodes = false;
+		for (int i = 0; i < pointCount; i++) {
+			hasResponseCodes |= metrics[i].getResponseCodes() != null;
+		}
+		if (!hasResponseCodes) {
+			return;
+		}
+
+		int metric = beginMetric("jmeter.usermetrics.transaction.responsecode", "number of requests per response code", "1");
+		int data = writer.beginMessage(METRIC_SUM);
+		for (codePoint = 0; codePoint < pointCount; codePoint++) {
+			if (metrics[codePoint].getResponseCodes() != null) {
+				metrics[codePoint].getResponseCodes().forEachCode(codeWriter);
+			}
+		}
+		writer.writeVarint(AGGREGATION_TEMPORALITY, AGGREGATION_TEMPORALITY_DELTA);
+		writer.writeVarint(SUM_IS_MONOTONIC, 1);
+		writer.endMessage(data);
+		writer.endMessage(metric);
+
+		metric = beginMetric("jmeter.usermetrics.transaction.failure", "number of failed requests per failure class", "1");
+		data = writer.beginMessage(METRIC_SUM);
+		for (int i = 0; i < pointCount; i++) {
+			final ResponseCodeCounts responseCodes = metrics[i].getResponseCodes();
+			if (responseCodes != null) {
+				for (int failureClass = 0; failureClass < ResponseCodeCounts.FAILURE_CLASSES.length; failureClass++) {
+					if (responseCodes.getFailures(failureClass) > 0) {
+						writeCounterPoint(i, responseCodes.getFailures(failureClass), "reason",
+								ResponseCodeCounts.FAILURE_CLASSES[failureClass]);
+					}
+				}
+			}
+		}
+		writer.writeVarint(AGGREGATION_TEMPORALITY, AGGREGATION_TEMPORALITY_DELTA);
+		writer.writeVarint(SUM_IS_MONOTONIC, 1);
+		writer.endMessage(data);
+		writer.endMessage(metric);
+	}
+
+	private void writeCodePoint(int code, long count) {
+		writeCounterPoint(codePoint, count, "code", ResponseCodeCounts.getCodeName(code));
+	}
+
+	private void writeCounterPoint(int i, long value, String key, String attributeValue) {
+		final int point = writer.beginMessage(DATA_POINTS);
+		writer.writeFixed64(POINT_START_TIME, timestamps[i] - bucketNanos);
+		writer.writeFixed64(POINT_TIME, timestamps[i]);
+		writer.writeFixed64(NUMBER_POINT_AS_INT, value);
+		writeTransactionAttributes(NUMBER_POINT_ATTRIBUTES, i);
+		writeAttribute(NUMBER_POINT_ATTRIBUTES, key, attributeValue);
+		writer.endMessage(point);
+	}
+
+	private static long getSumValue(int sum, TransactionMetric metric) {
+		switch (sum) {
+			case 0:
+				return metric.getTotal();
+			case 1:
+				return metric.getSuccesses();
+			case 2:
+				return metric.getFailures();
+			case 3:
+				return metric.getHits();
+			case 4:
+				return metric.getSentBytes();
+			default:
+				return metric.getReceivedBytes();
+		}
+	}
+
+	private void writeHistograms() {
+		int metric = beginMetric("jmeter.usermetrics.transaction.duration", "elapsed time of the requests", "ms");
+		int data = writer.beginMessage(METRIC_HISTOGRAM);
+		boolean hasPhases = false;
+		for (int i = 0; i < pointCount; i++) {
+			writeHistogramPoint(i, metrics[i].getElapsedTimes(), metrics[i].getSumTime(), null);
+			hasPhases |= metrics[i].hasPhases();
+		}
+		writer.writeVarint(AGGREGATION_TEMPORALITY, AGGREGATION_TEMPORALITY_DELTA);
+		writer.endMessage(data);
+		writer.endMessage(metric);
+		if (!hasPhases) {
+			return;
+		}
+
+		metric = beginMetric("jmeter.usermetrics.transaction.phase.duration",
+				"connect time, time to first byte or processing time of the requests", "ms");
+		data = writer.beginMessage(METRIC_HISTOGRAM);
+		for (int i = 0; i < pointCount; i++) {
+			if (metrics[i].hasPhases()) {
+				for (int phase = 0; phase < TransactionMetric.PHASES.length; phase++) {
+					writeHistogramPoint(i, metrics[i].getPhaseTimes(phase), -1, TransactionMetric.PHASES[phase]);
+				}
+			}
+		}
+		writer.writeVarint(AGGREGATION_TEMPORALITY, AGGREGATION_TEMPORALITY_DELTA);
+		writer.endMessage(data);
+		writer.endMessage(metric);
+	}
+
+	/**
+	 * @param sum the sum of the values, negative if unknown
+	 * @param phase the value of the phase attribute, or null
+	 */
+	private void writeHistogramPoint(int i, LatencyHistogram histogram, double sum, String phase) {
+		final int point = writer.beginMessage(DATA_POINTS);
+		writer.writeFixed64(POINT_START_TIME, timestamps[i] - bucketNanos);
+		writer.writeFixed64(POINT_TIME, timestamps[i]);
+		writer.writeFixed64(HISTOGRAM_POINT_COUNT, histogram.getTotalCount());
+		if (sum >= 0) {
+			writer.writeDouble(HISTOGRAM_POINT_SUM, sum);
+		}
+
+		boundCount = 0;
+		histogram.forEachBucket(bucketCollector);
+		// the last bucket counts the values above the last bound
+		bucketCounts[boundCount] = 0;
+		writer.writePackedFixed64(HISTOGRAM_POINT_BUCKET_COUNTS, bucketCounts, boundCount + 1);
+		writer.writePackedDouble(HISTOGRAM_POINT_EXPLICIT_BOUNDS, explicitBounds, boundCount);
+
+		writeTransactionAttributes(HISTOGRAM_POINT_ATTRIBUTES, i);
+		if (phase != null) {
+			writeAttribute(HISTOGRAM_POINT_ATTRIBUTES, "phase", phase);
+		}
+		writer.writeDouble(HISTOGRAM_POINT_MIN, histogram.getMinValue());
+		writer.writeDouble(HISTOGRAM_POINT_MAX, histogram.getMaxValue());
+		writer.endMessage(point);
+	}
+
+	/**
+	 * Adds a histogram bucket as OTLP bucket (previous bound, upper bound], with an empty bucket in front of it
+	 * if there is a gap to the previous bucket. The {@link LatencyHistogram} buckets are nested in the coarser
+	 * export buckets, so a bucket is either added to the last export bucket or starts a new one.
+	 */
+	private void collectBucket(long lowerBound, long upperBound, long count) {
+		final int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(lowerBound) - HISTOGRAM_SUB_BUCKET_BITS);
+		final long exportLowerBound = lowerBound >> shift << shift;
+		final long exportUpperBound = exportLowerBound + (1L << shift) - 1;
+		if (boundCount > 0 && exportUpperBound == lastUpperBound) {
+			bucketCounts[boundCount - 1] += count;
+			return;
+		}
+		if (exportLowerBound > 0 && (boundCount == 0 || exportLowerBound > lastUpperBound + 1)) {
+			addBound(exportLowerBound - 1, 0);
+		}
+		addBound(exportUpperBound, count);
+		lastUpperBound = exportUpperBound;
+	}
+
+	private void addBound(long bound, long count) {
+		if (boundCount + 1 >= explicitBounds.length) {
+			explicitBounds = Arrays.copyOf(explicitBounds, 2 * explicitBounds.length);
+			bucketCounts = Arrays.copyOf(bucketCounts, 2 * bucketCounts.length);
+		}
+		bucketCounts[boundCount] = count;
+		explicitBounds[boundCount] = bound;
+		boundCount++;
+	}
+
+	private int beginMetric(String name, String description, String unit) {
+		final int metric = writer.beginMessage(SCOPE_METRICS_METRICS);
+		writer.writeString(METRIC_NAME, name);
+		writer.writeString(METRIC_DESCRIPTION, description);
+		writer.writeString(METRIC_UNIT, unit);
+		return metric;
+	}
+
+	private void writeTransactionAttributes(int field, int point) {
+		writeAttribute(field, "transaction", transactions[point]);
+		if (parents[point] != null) {
+			writeAttribute(field, "parent", parents[point]);
+		}
+	}
+
+	private void writeAttributes(int field, Map<String, String> attributes) {
+		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+			if (!attribute.getKey().trim().isEmpty() && !attribute.getValue().trim().isEmpty()) {
+				writeAttribute(field, attribute.getKey(), attribute.getValue());
+			}
+		}
+	}
+
+	private void writeAttribute(int field, String key, String value) {
+		final int keyValue = writer.beginMessage(field);
+		writer.writeString(KEY_VALUE_KEY, key);
+		final int anyValue = writer.beginMessage(KEY_VALUE_VALUE);
+		writer.writeString(ANY_VALUE_STRING, value);
+		writer.endMessage(anyValue);
+		writer.endMessage(keyValue);
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.jmeter.report.utils.MetricUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the transaction aggregates as OTLP/HTTP protobuf request, an alternative to the MINT lines of the
+ * {@link MintMetricSender} which groups the data points by metric and shares the resource attributes.
+ * <p>
+ * All aggregates of a send interval are sent in one request, without the rate control and the retries of the
+ * {@link MintMetricSender}. Failed and throttled requests are dropped and counted.
+ */
+class OtlpMetricExporter {
+	private static final Logger log = LoggerFactory.getLogger(OtlpMetricExporter.class);
+	private static final String PROTOBUF = "application/x-protobuf";
+	// the requests are sent once per send interval
+	private static final int MAX_CONNECTIONS = 2;
+	private final String name;
+	private final URL url;
+	private final OtlpMetricEncoder encoder;
+	private final MetricTransport transport;
+	private final AtomicLong failedRequests = new AtomicLong();
+	private CompletableFuture<?> lastRequest;
+
+	/**
+	 * @param url the OTLP metrics url, e.g. {@code https://DT_SERVER/api/v2/otlp/v1/metrics}
+	 * @param transportType the HTTP transport, see {@link MetricTransport#create}
+	 */
+	OtlpMetricExporter(String name, String url, String token, Map<String, String> resourceAttributes,
+			Map<String, String> transactionAttributes, long bucketMillis, String transportType) throws IOException {
+		this.name = name;
+		this.url = new URL(url);
+		this.encoder = new OtlpMetricEncoder(resourceAttributes, transactionAttributes, bucketMillis);
+		this.transport = MetricTransport.create(name, transportType, this.url, token, MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Adds the aggregate of a transaction in the time bucket ending at the timestamp.
+	 *
+	 * @param parent the label path of the parent transaction, or null for a top level transaction
+	 */
+	synchronized void add(String transaction, String parent, TransactionMetric metric, long timestampMillis) {
+		encoder.add(transaction, parent, metric, timestampMillis);
+	}
+
+	/**
+	 * Sends all added aggregates within one request.
+	 */
+	synchronized void export() {
+		if (encoder.isEmpty()) {
+			return;
+		}
+		final ProtobufWriter request = encoder.encode();
+		final int size = request.size();
+		log.debug("{}: Sending OTLP request of {} bytes", name, size);
+		// the encoder reuses its buffer, so the request gets a copy
+		lastRequest = transport.send(request.toByteArray(), PROTOBUF).whenComplete((response, ex) -> {
+			if (ex != null) {
+				failedRequests.incrementAndGet();
+				log.error("{}: failed to send OTLP metrics: {}", name, ex.getMessage());
+			} else if (MetricUtils.isSuccessCode(response.getStatusCode())) {
+				log.info("{}: Success, OTLP request of {} bytes written", name, size);
+			} else {
+				failedRequests.incrementAndGet();
+				log.error("{}: Error writing OTLP metrics to {}, responseCode: {}, responseBody: {}",
+						name, new Object[] { url, response.getStatusCode(), response.getBody() });
+			}
+		});
+	}
+
+	/**
+	 * @return the number of requests which failed or have not been accepted by the server
+	 */
+	long getFailedRequests() {
+		return failedRequests.get();
+	}
+
+	void destroy() {
+		if (lastRequest != null) {
+			try {
+				lastRequest.get(5L, TimeUnit.SECONDS);
+			} catch (Exception ex) {
+				log.error("{}: Error waiting for last OTLP request: {}", name, ex.getMessage());
+			}
+		}
+		transport.close();
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.util.Arrays;
+
+/**
+ * Minimal protocol buffers encoder, which writes the fields directly into a reusable byte array.
+ * <p>
+ * Nested messages are written in place: {@link #beginMessage} reserves one byte for the length, which is enough for
+ * messages below 128 bytes. Only larger messages are moved by {@link #endMessage} to make room for a longer length.
+ */
+class ProtobufWriter {
+	private static final int WIRE_TYPE_VARINT = 0;
+	private static final int WIRE_TYPE_FIXED64 = 1;
+	private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+	private byte[] buffer;
+	private int position;
+
+	ProtobufWriter(int initialCapacity) {
+		buffer = new byte[Math.max(16, initialCapacity)];
+	}
+
+	/**
+	 * Discards the written bytes, the buffer is kept.
+	 */
+	void reset() {
+		position = 0;
+	}
+
+	int size() {
+		return position;
+	}
+
+	/**
+	 * @return the internal buffer, which contains {@link #size()} valid bytes
+	 */
+	byte[] getBuffer() {
+		return buffer;
+	}
+
+	byte[] toByteArray() {
+		return Arrays.copyOf(buffer, position);
+	}
+
+	/**
+	 * Starts a nested message.
+	 *
+	 * @return the start of the message body, which has to be passed to {@link #endMessage}
+	 */
+	int beginMessage(int field) {
+		writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+		ensureCapacity(1);
+		position++;
+		return position;
+	}
+
+	void endMessage(int bodyStart) {
+		final int length = position - bodyStart;
+		final int lengthSize = varintSize(length);
+		if (lengthSize > 1) {
+			ensureCapacity(lengthSize - 1);
+			System.arraycopy(buffer, bodyStart, buffer, bodyStart + lengthSize - 1, length);
+			position += lengthSize - 1;
+		}
+		int index = bodyStart - 1;
+		long value = length;
+		while (value >= 0x80) {
+			buffer[index++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		buffer[index] = (byte) value;
+	}
+
+	void writeString(int field, String value) {
+		writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+		writeVarint(utf8Length(value));
+		ensureCapacity(3 * value.length());
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c < 0x80) {
+				buffer[position++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[position++] = (byte) (0xC0 | c >>> 6);
+				buffer[position++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer[position++] = (byte) (0xF0 | codePoint >>> 18);
+				buffer[position++] = (byte) (0x80 | codePoint >>> 12 & 0x3F);
+				buffer[position++] = (byte) (0x80 | codePoint >>> 6 & 0x3F);
+				buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogates are encoded as '?', like String.getBytes does
+				buffer[position++] = '?';
+			} else {
+				buffer[position++] = (byte) (0xE0 | c >>> 12);
+				buffer[position++] = (byte) (0x80 | c >>> 6 & 0x3F);
+				buffer[position++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	void writeVarint(int field, long value) {
+		writeTag(field, WIRE_TYPE_VARINT);
+		writeVarint(value);
+	}
+
+	void writeFixed64(int field, long value) {
+		writeTag(field, WIRE_TYPE_FIXED64);
+		writeFixed64(value);
+	}
+
+	void writeDouble(int field, double value) {
+		writeFixed64(field, Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * Writes the first {@code count} values as packed repeated fixed64 field.
+	 */
+	void writePackedFixed64(int field, long[] values, int count) {
+		writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+		writeVarint(8L * count);
+		for (int i = 0; i < count; i++) {
+			writeFixed64(values[i]);
+		}
+	}
+
+	/**
+	 * Writes the first {@code count} values as packed repeated double field.
+	 */
+	void writePackedDouble(int field, double[] values, int count) {
+		writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+		writeVarint(8L * count);
+		for (int i = 0; i < count; i++) {
+			writeFixed64(Double.doubleToRawLongBits(values[i]));
+		}
+	}
+
+	private void writeTag(int field, int wireType) {
+		writeVarint((long) field << 3 | wireType);
+	}
+
+	private void writeVarint(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer[position++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+	}
+
+	private void writeFixed64(long value) {
+		ensureCapacity(8);
+		for (int i = 0; i < 8; i++) {
+			buffer[position++] = (byte) (value >>> 8 * i);
+		}
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (position + bytes > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(position + bytes, 2 * buffer.length));
+		}
+	}
+
+	private static int varintSize(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static int utf8Length(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += Character.isSurrogate(c) ? 1 : 3;
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.util.Arrays;
+
+/**
+ * Counts the response codes and the failure classes of a transaction.
+ * <p>
+ * The numeric response codes are the keys of an open addressing table of primitive ints, so counting a sample neither
+ * boxes nor allocates. The number of distinct codes is limited, further codes are counted as {@code other}, and
+ * response codes which are not numeric (e.g. JMeter's {@code Non HTTP response code: ...}) as {@code non_http}.
+ */
+class ResponseCodeCounts {
+	/**
+	 * The classes of failed requests: assertion failures, timeouts, connection errors, HTTP status 4xx and 5xx and
+	 * all other failures.
+	 */
+	static final String[] FAILURE_CLASSES = { "assertion", "timeout", "connection", "4xx", "5xx", "other" };
+	static final int ASSERTION = 0;
+	static final int TIMEOUT = 1;
+	static final int CONNECTION = 2;
+	static final int CLIENT_ERROR = 3;
+	static final int SERVER_ERROR = 4;
+	static final int OTHER_FAILURE = 5;
+	static final int MAX_CODES = 20;
+	// keys for the codes which are not counted individually, numeric codes are in the range 0 - 999
+	static final int OTHER_CODES = 1000;
+	static final int NON_HTTP = 1001;
+	private static final int EMPTY = -1;
+	private static final String[] CONNECTION_ERRORS = { "Connect", "UnknownHost", "NoHttpResponse", "Socket", "SSL" };
+	private int[] keys = createKeys(8);
+	private long[] counts = new long[8];
+	private int size;
+	private int distinctCodes;
+	private final long[] failures = new long[FAILURE_CLASSES.length];
+
+	interface CodeConsumer {
+		void accept(int code, long count);
+	}
+
+	/**
+	 * Adds a response code, empty response codes are ignored.
+	 */
+	void addCode(String responseCode, long count) {
+		final int code = parseCode(responseCode);
+		if (code != EMPTY) {
+			addCount(code, count);
+		}
+	}
+
+	void addFailure(int failureClass, long count) {
+		failures[failureClass] += count;
+	}
+
+	void merge(ResponseCodeCounts other) {
+		for (int i = 0; i < other.keys.length; i++) {
+			if (other.keys[i] != EMPTY) {
+				addCount(other.keys[i], other.counts[i]);
+			}
+		}
+		for (int i = 0; i < failures.length; i++) {
+			failures[i] += other.failures[i];
+		}
+	}
+
+	void forEachCode(CodeConsumer consumer) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY) {
+				consumer.accept(keys[i], counts[i]);
+			}
+		}
+	}
+
+	long getCount(int code) {
+		final int index = indexOf(code);
+		return keys[index] == EMPTY ? 0 : counts[index];
+	}
+
+	/**
+	 * @param failureClass the index of the class in {@link #FAILURE_CLASSES}
+	 */
+	long getFailures(int failureClass) {
+		return failures[failureClass];
+	}
+
+	/**
+	 * @return the value of the {@code code} dimension
+	 */
+	static String getCodeName(int code) {
+		switch (code) {
+			case OTHER_CODES:
+				return "other";
+			case NON_HTTP:
+				return "non_http";
+			default:
+				return Integer.toString(code);
+		}
+	}
+
+	/**
+	 * Classifies a failed request by its response code, HTTP errors take precedence over failed assertions.
+	 *
+	 * @param assertionFailed true if an assertion of the request failed
+	 * @return the index of the class in {@link #FAILURE_CLASSES}
+	 */
+	static int getFailureClass(String responseCode, boolean assertionFailed) {
+		final int code = parseCode(responseCode);
+		if (code >= 500 && code < 600) {
+			return SERVER_ERROR;
+		}
+		if (code >= 400 && code < 500) {
+			return CLIENT_ERROR;
+		}
+		if (code == NON_HTTP) {
+			if (responseCode.contains("Timeout")) {
+				return TIMEOUT;
+			}
+			for (String connectionError : CONNECTION_ERRORS) {
+				if (responseCode.contains(connectionError)) {
+					return CONNECTION;
+				}
+			}
+		}
+		return assertionFailed ? ASSERTION : OTHER_FAILURE;
+	}
+
+	/**
+	 * @return the numeric code between 0 and 999, {@link #NON_HTTP} for other codes or -1 for empty codes
+	 */
+	static int parseCode(String responseCode) {
+		if (responseCode == null || responseCode.isEmpty()) {
+			return EMPTY;
+		}
+		if (responseCode.length() > 3) {
+			return NON_HTTP;
+		}
+		int code = 0;
+		for (int i = 0; i < responseCode.length(); i++) {
+			final int digit = responseCode.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return NON_HTTP;
+			}
+			code = code * 10 + digit;
+		}
+		return code;
+	}
+
+	private void addCount(int code, long count) {
+		int index = indexOf(code);
+		if (keys[index] == EMPTY) {
+			if (code != NON_HTTP && code != OTHER_CODES) {
+				if (distinctCodes == MAX_CODES) {
+					addCount(OTHER_CODES, count);
+					return;
+				}
+				distinctCodes++;
+			}
+			keys[index] = code;
+			if (++size * 2 > keys.length) {
+				resize();
+				index = indexOf(code);
+			}
+		}
+		counts[index] += count;
+	}
+
+	private int indexOf(int code) {
+		int index = mix(code) & (keys.length - 1);
+		while (keys[index] != EMPTY && keys[index] != code) {
+			index = (index + 1) & (keys.length - 1);
+		}
+		return index;
+	}
+
+	private void resize() {
+		final int[] oldKeys = keys;
+		final long[] oldCounts = counts;
+		keys = createKeys(oldKeys.length * 2);
+		counts = new long[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				final int index = indexOf(oldKeys[i]);
+				keys[index] = oldKeys[i];
+				counts[index] = oldCounts[i];
+			}
+		}
+	}
+
+	private static int[] createKeys(int capacity) {
+		final int[] keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		return keys;
+	}
+
+	private static int mix(int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
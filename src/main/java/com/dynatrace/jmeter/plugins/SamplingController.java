@@ -0,0 +1,110 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Measures the backlog of the backend listener and switches to sampled aggregation under overload.
+ * <p>
+ * JMeter drains the whole backend listener queue into one batch, so the batch size shows how far the listener
+ * is behind. If a batch exceeds the configured budget, only every n-th sample is aggregated (with weight n) and n
+ * is doubled, until the batches are small again. When the batches drop below a quarter of the budget, n is halved.
+ */
+class SamplingController {
+	private static final Logger log = LoggerFactory.getLogger(SamplingController.class);
+	private static final int MAX_SAMPLING_FACTOR = 64;
+	private final String name;
+	private final int maxBatchSize;
+	private volatile int samplingFactor = 1;
+	private long sampleCounter;
+	private long batches;
+	private long samples;
+	private long batchNanos;
+	private int maxBatch;
+	private long intervalStartNanos = System.nanoTime();
+
+	/**
+	 * @param maxBatchSize the batch size which triggers sampling, 0 disables sampling
+	 */
+	SamplingController(String name, int maxBatchSize) {
+		this.name = name;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Called by the listener thread for every sample result.
+	 *
+	 * @return true if the sample result has to be aggregated
+	 */
+	boolean shouldProcess() {
+		return samplingFactor == 1 || sampleCounter++ % samplingFactor == 0;
+	}
+
+	/**
+	 * @return the number of sample results which are represented by one aggregated sample result
+	 */
+	int getSamplingFactor() {
+		return samplingFactor;
+	}
+
+	/**
+	 * Records a processed batch and adapts the sampling factor.
+	 */
+	synchronized void recordBatch(int batchSize, long nanos) {
+		batches++;
+		samples += batchSize;
+		batchNanos += nanos;
+		maxBatch = Math.max(maxBatch, batchSize);
+
+		if (maxBatchSize <= 0) {
+			return;
+		}
+		if (batchSize > maxBatchSize && samplingFactor < MAX_SAMPLING_FACTOR) {
+			samplingFactor *= 2;
+			sampleCounter = 0;
+			log.warn("{}: Batch of {} samples exceeds {}, aggregating every {}. sample", name, batchSize,
+					maxBatchSize, samplingFactor);
+		} else if (batchSize < maxBatchSize / 4 && samplingFactor > 1) {
+			samplingFactor /= 2;
+			sampleCounter = 0;
+			log.info("{}: Batch of {} samples, aggregating every {}. sample", name, batchSize, samplingFactor);
+		}
+	}
+
+	/**
+	 * Passes the backlog indicators of the current interval to the consumer and starts a new interval.
+	 */
+	synchronized void collect(ObjDoubleConsumer<String> consumer) {
+		final long now = System.nanoTime();
+		final double elapsedSeconds = Math.max(1, now - intervalStartNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+		consumer.accept("jmeter.listener.batchsize", maxBatch);
+		consumer.accept("jmeter.listener.batchtime", batches == 0 ? 0 : batchNanos / (double) batches / TimeUnit.MILLISECONDS.toNanos(1));
+		consumer.accept("jmeter.listener.samplerate", samples / elapsedSeconds);
+		consumer.accept("jmeter.listener.samplingrate", 1.0 / samplingFactor);
+
+		intervalStartNanos = now;
+		batches = 0;
+		samples = 0;
+		batchNanos = 0;
+		maxBatch = 0;
+	}
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A service level objective, which is evaluated once per send interval against the interval aggregates.
+ * <p>
+ * Syntax: {@code <metric>[(label~"<regex>")] <operator> <threshold>[ms|s|%] [for <n> intervals]}, e.g.
+ * {@code p95(label~"checkout.*") > 800ms for 3 intervals} or {@code error rate > 5%}.
+ * The metric is one of {@code pNN}, {@code mean}, {@code min}, {@code max}, {@code count} or {@code error rate}.
+ * The units {@code ms} and {@code s} are only valid for the response time metrics, {@code %} is only valid for the
+ * error rate and a count has no unit.
+ * The rule is violated if the condition holds in the given number of consecutive intervals.
+ */
+class SloRule {
+	private static final Pattern RULE_PATTERN = Pattern.compile(
+			"\\s*(?<metric>p\\d+(?:\\.\\d+)?|mean|min|max|count|error\\s*rate)"
+					+ "\\s*(?:\\(\\s*label\\s*~\\s*\"(?<label>[^\"]*)\"\\s*\\))?"
+					+ "\\s*(?<operator>>=|<=|>|<)"
+					+ "\\s*(?<threshold>\\d+(?:\\.\\d+)?)\\s*(?<unit>ms|s|%)?"
+					+ "(?:\\s+for\\s+(?<intervals>\\d+)\\s+intervals?)?\\s*",
+			Pattern.CASE_INSENSITIVE);
+	private final String definition;
+	private final String metric;
+	private final double percentile;
+	private final Pattern labelPattern;
+	private final String operator;
+	private final double threshold;
+	private final int intervals;
+	private final Map<String, Boolean> matchingLabels = new HashMap<>();
+	private TransactionMetric intervalMetric = new TransactionMetric();
+	private int violatedIntervals;
+	private double lastValue;
+
+	private SloRule(String definition, String metric, double percentile, Pattern labelPattern, String operator,
+			double threshold, int intervals) {
+		this.definition = definition;
+		this.metric = metric;
+		this.percentile = percentile;
+		this.labelPattern = labelPattern;
+		this.operator = operator;
+		this.threshold = threshold;
+		this.intervals = intervals;
+	}
+
+	/**
+	 * Parses a semicolon separated list of rules.
+	 *
+	 * @throws IllegalArgumentException if one of the rules is invalid
+	 */
+	static List<SloRule> parse(String rules) {
+		final List<SloRule> result = new ArrayList<>();
+		for (String rule : rules.split(";")) {
+			if (!rule.trim().isEmpty()) {
+				result.add(parseRule(rule.trim()));
+			}
+		}
+		return result;
+	}
+
+	private static SloRule parseRule(String rule) {
+		final Matcher matcher = RULE_PATTERN.matcher(rule);
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Invalid SLO rule: " + rule);
+		}
+		final String metric = matcher.group("metric").toLowerCase(Locale.ROOT).replaceAll("\\s", "");
+		final String label = matcher.group("label");
+		final String unit = matcher.group("unit");
+		final String intervals = matcher.group("intervals");
+		if (unit != null && !isValidUnit(metric, unit.toLowerCase(Locale.ROOT))) {
+			throw new IllegalArgumentException("Invalid unit " + unit + " for metric " + metric + " in SLO rule: " + rule);
+		}
+		double threshold = Double.parseDouble(matcher.group("threshold"));
+		if ("s".equalsIgnoreCase(unit)) {
+			threshold *= 1000;
+		}
+		final double percentile = metric.startsWith("p") ? Double.parseDouble(metric.substring(1)) : 0;
+		if (percentile > 100) {
+			throw new IllegalArgumentException("Invalid percentile in SLO rule: " + rule);
+		}
+		return new SloRule(rule, metric, percentile, label == null ? null : Pattern.compile(label), matcher.group("operator"),
+				threshold, intervals == null ? 1 : Math.max(1, Integer.parseInt(intervals)));
+	}
+
+	private static boolean isValidUnit(String metric, String unit) {
+		switch (metric) {
+			case "count":
+				return false;
+			case "errorrate":
+				return "%".equals(unit);
+			default:
+				return "ms".equals(unit) || "s".equals(unit);
+		}
+	}
+
+	String getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * Adds the aggregate of a transaction to the current interval, if the label matches the rule.
+	 */
+	void add(String label, TransactionMetric metric) {
+		if (labelPattern == null || matchingLabels.computeIfAbsent(label, l -> labelPattern.matcher(l).find())) {
+			intervalMetric.merge(metric);
+		}
+	}
+
+	/**
+	 * Removes the cached label match, e.g. if the label has been idle for a long time.
+	 */
+	void forget(String label) {
+		matchingLabels.remove(label);
+	}
+
+	/**
+	 * Evaluates the rule for the current interval and starts a new interval.
+	 *
+	 * @return true if the rule is violated
+	 */
+	boolean evaluate() {
+		if (intervalMetric.isEmpty()) {
+			// no samples, no violation
+			lastValue = 0;
+			violatedIntervals = 0;
+		} else {
+			lastValue = getValue(intervalMetric);
+			violatedIntervals = compare(lastValue) ? violatedIntervals + 1 : 0;
+		}
+		intervalMetric = new TransactionMetric();
+		return isViolated();
+	}
+
+	boolean isViolated() {
+		return violatedIntervals >= intervals;
+	}
+
+	/**
+	 * @return the value of the metric in the last evaluated interval
+	 */
+	double getLastValue() {
+		return lastValue;
+	}
+
+	private double getValue(TransactionMetric metric) {
+		switch (this.metric) {
+			case "mean":
+				return metric.getMean();
+			case "min":
+				return metric.getMinTime();
+			case "max":
+				return metric.getMaxTime();
+			case "count":
+				return metric.getTotal();
+			case "errorrate":
+				return metric.getErrorRate();
+			default:
+				return metric.getPercentile(percentile);
+		}
+	}
+
+	private boolean compare(double value) {
+		switch (operator) {
+			case ">":
+				return value > threshold;
+			case ">=":
+				return value >= threshold;
+			case "<":
+				return value < threshold;
+			default:
+				return value <= threshold;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return definition;
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregates the sub-results of sample results, e.g. the children of a transaction controller which generates a parent
+ * sample or the embedded resources of a HTTP request, under label paths like {@code parent > child}.
+ * <p>
+ * The tree is walked iteratively with a stack which is allocated once for the maximum depth. The label paths are
+ * created once per parent and child label and shared by all later samples. The number of distinct children of a parent
+ * is limited, further children are aggregated as {@code parent > other}. The parent path is passed to the time buckets
+ * together with the path, so the aggregate of a sub-result keeps its parent even if the paths are forgotten meanwhile.
+ */
+class SubResultAggregator {
+	static final String SEPARATOR = " > ";
+	static final String OTHER_CHILDREN = "other";
+	private static final int MAX_CHILDREN_PER_PARENT = 100;
+	private final int maxDepth;
+	// the label paths of the children by parent path and child label
+	private final Map<String, Map<String, String>> childPaths = new ConcurrentHashMap<>();
+	// the stack of the walk, one entry per level
+	private final SampleResult[][] children;
+	private final int[] nextChild;
+	private final String[] paths;
+
+	/**
+	 * @param maxDepth the number of sub-result levels which are aggregated
+	 */
+	SubResultAggregator(int maxDepth) {
+		this.maxDepth = maxDepth;
+		this.children = new SampleResult[maxDepth][];
+		this.nextChild = new int[maxDepth];
+		this.paths = new String[maxDepth];
+	}
+
+	/**
+	 * Adds the sub-results of the sample result up to the maximum depth to the time buckets, each with its label path.
+	 * Called by the listener thread only.
+	 */
+	void add(SampleResult result, TimeBucketRing timeBuckets, int weight) {
+		if (maxDepth <= 0) {
+			return;
+		}
+		int depth = 0;
+		children[0] = result.getSubResults();
+		nextChild[0] = 0;
+		paths[0] = result.getSampleLabel();
+		while (depth >= 0) {
+			if (nextChild[depth] >= children[depth].length) {
+				children[depth] = null;
+				paths[depth] = null;
+				depth--;
+				continue;
+			}
+			final SampleResult child = children[depth][nextChild[depth]++];
+			final String path = getPath(paths[depth], child.getSampleLabel());
+			timeBuckets.add(path, paths[depth], child, weight);
+			if (depth + 1 < maxDepth) {
+				final SampleResult[] grandChildren = child.getSubResults();
+				if (grandChildren.length > 0) {
+					depth++;
+					children[depth] = grandChildren;
+					nextChild[depth] = 0;
+					paths[depth] = path;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the paths of a label, e.g. if the label has been idle for a long time.
+	 */
+	void forget(String path) {
+		for (Map<String, String> siblings : childPaths.values()) {
+			siblings.values().remove(path);
+		}
+		childPaths.remove(path);
+	}
+
+	private String getPath(String parentPath, String label) {
+		Map<String, String> paths = childPaths.get(parentPath);
+		if (paths == null) {
+			paths = new ConcurrentHashMap<>();
+			childPaths.put(parentPath, paths);
+		}
+		String path = paths.get(label);
+		if (path == null) {
+			final String child = paths.size() < MAX_CHILDREN_PER_PARENT ? label : OTHER_CHILDREN;
+			path = paths.get(child);
+			if (path == null) {
+				path = parentPath + SEPARATOR + child;
+				paths.put(child, path);
+			}
+		}
+		return path;
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed size ring of time buckets, which aggregates the sample results by their end time.
+ * <p>
+ * All buckets between the first open (not yet flushed) bucket and the end of the ring can receive samples.
+ * A bucket is only flushed one bucket length after its end, so samples which reach the listener up to one bucket late
+ * are still added to their own bucket. Samples which end before the first open bucket (their bucket has already been
+ * sent) are added to the first open bucket, samples which end after the last bucket of the ring are added to the
+ * last bucket.
+ */
+class TimeBucketRing {
+	private final long bucketMillis;
+	private final TimeBucket[] buckets;
+	private long firstOpenBucketStart;
+
+	TimeBucketRing(long bucketMillis, int size, long startTimeMillis) {
+		this.bucketMillis = bucketMillis;
+		this.buckets = new TimeBucket[size];
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new TimeBucket();
+		}
+		this.firstOpenBucketStart = bucketStart(startTimeMillis);
+	}
+
+	synchronized void add(String label, SampleResult result, int weight) {
+		add(label, null, result, weight);
+	}
+
+	/**
+	 * @param parent the label path of the parent, if the sample result is a sub-result
+	 */
+	synchronized void add(String label, String parent, SampleResult result, int weight) {
+		long start = bucketStart(result.getEndTime());
+		if (start < firstOpenBucketStart) {
+			start = firstOpenBucketStart;
+		} else if (start > lastBucketStart()) {
+			start = lastBucketStart();
+		}
+
+		TimeBucket bucket = buckets[index(start)];
+		bucket.metrics.computeIfAbsent(label, k -> new TransactionMetric(parent)).add(result, weight);
+	}
+
+	/**
+	 * Removes all completed buckets from the ring.
+	 *
+	 * @param nowMillis the current time, all buckets ending one bucket length before this time or earlier are completed
+	 * @param all if true, all buckets are removed, including the ones which are not completed yet
+	 * @return the non empty buckets in chronological order
+	 */
+	synchronized List<TimeBucket> flush(long nowMillis, boolean all) {
+		// the bucket which ended last is kept open for the samples which arrive late
+		final long flushUntil = all ? lastBucketStart() + bucketMillis : bucketStart(nowMillis - bucketMillis);
+		final List<TimeBucket> completed = new ArrayList<>();
+		for (int i = 0; i < buckets.length && firstOpenBucketStart < flushUntil; i++) {
+			int index = index(firstOpenBucketStart);
+			TimeBucket bucket = buckets[index];
+			if (!bucket.metrics.isEmpty()) {
+				bucket.timestampMillis = firstOpenBucketStart + bucketMillis;
+				completed.add(bucket);
+				buckets[index] = new TimeBucket();
+			}
+			firstOpenBucketStart += bucketMillis;
+		}
+		// all remaining buckets are empty, if the flush was delayed for longer than the whole ring
+		firstOpenBucketStart = Math.max(firstOpenBucketStart, flushUntil);
+		return completed;
+	}
+
+	private long lastBucketStart() {
+		return firstOpenBucketStart + (buckets.length - 1) * bucketMillis;
+	}
+
+	private long bucketStart(long timeMillis) {
+		return timeMillis - Math.floorMod(timeMillis, bucketMillis);
+	}
+
+	private int index(long bucketStart) {
+		return (int) Math.floorMod(bucketStart / bucketMillis, (long) buckets.length);
+	}
+
+	static class TimeBucket {
+		private long timestampMillis;
+		private final Map<String, TransactionMetric> metrics = new HashMap<>();
+
+		/**
+		 * @return the end time of the bucket, which is used as timestamp for the metrics
+		 */
+		long getTimestamp() {
+			return timestampMillis;
+		}
+
+		Map<String, TransactionMetric> getMetrics() {
+			return metrics;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import com.dynatrace.mint.MintDimension;
+import com.dynatrace.mint.MintGauge;
+import com.dynatrace.mint.MintMetricsLine;
+import com.dynatrace.mint.SchemalessMetricSanitizer;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Creates the metric lines of a transaction aggregate, used by the backend listener and by the JTL backfill.
+ */
+class TransactionLines {
+	private static final double[] SUMMARY_PERCENTILES = { 50, 90, 95, 99 };
+	private static final double[] PHASE_PERCENTILES = { 50, 90, 99 };
+	private final Map<String, String> transactionDimensions;
+
+	/**
+	 * @param transactionDimensions the dimensions which are added to every line
+	 */
+	TransactionLines(Map<String, String> transactionDimensions) {
+		this.transactionDimensions = transactionDimensions;
+	}
+
+	/**
+	 * Adds the lines of one time bucket.
+	 *
+	 * @param transaction the sanitized dimension value of the transaction
+	 */
+	void addMetrics(String transaction, TransactionMetric metric, long timestamp, Consumer<MintMetricsLine> consumer) {
+		addMetrics(transaction, null, metric, timestamp, consumer);
+	}
+
+	/**
+	 * Adds the lines of one time bucket of a sub-result.
+	 *
+	 * @param transaction the sanitized dimension value of the transaction
+	 * @param parent the sanitized dimension value of the parent transaction, or null for a top level transaction
+	 */
+	void addMetrics(String transaction, String parent, TransactionMetric metric, long timestamp,
+			Consumer<MintMetricsLine> consumer) {
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.count", metric.getTotal(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.success", metric.getSuccesses(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.error", metric.getFailures(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.hits", metric.getHits(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.mintime", metric.getMinTime(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.maxtime", metric.getMaxTime(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.meantime", metric.getMean(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.sentbytes", metric.getSentBytes(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.transaction.receivedbytes", metric.getReceivedBytes(), timestamp));
+		if (metric.hasPhases()) {
+			for (int phase = 0; phase < TransactionMetric.PHASES.length; phase++) {
+				final LatencyHistogram phaseTimes = metric.getPhaseTimes(phase);
+				for (double percentile : PHASE_PERCENTILES) {
+					final MintMetricsLine line = createLine(transaction, parent,
+							"jmeter.usermetrics.transaction.phase.p" + (int) percentile, phaseTimes.getPercentile(percentile),
+							timestamp);
+					line.addDimension(new MintDimension("phase", TransactionMetric.PHASES[phase]));
+					consumer.accept(line);
+				}
+			}
+		}
+		final ResponseCodeCounts responseCodes = metric.getResponseCodes();
+		if (responseCodes != null) {
+			responseCodes.forEachCode((code, count) -> consumer.accept(createCounterLine(transaction, parent,
+					"jmeter.usermetrics.transaction.responsecode", "code", ResponseCodeCounts.getCodeName(code), count,
+					timestamp)));
+			for (int failureClass = 0; failureClass < ResponseCodeCounts.FAILURE_CLASSES.length; failureClass++) {
+				final long failures = responseCodes.getFailures(failureClass);
+				if (failures > 0) {
+					consumer.accept(createCounterLine(transaction, parent, "jmeter.usermetrics.transaction.failure",
+							"reason", ResponseCodeCounts.FAILURE_CLASSES[failureClass], failures, timestamp));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the lines of the whole test summary.
+	 *
+	 * @param transaction the sanitized dimension value of the transaction
+	 * @param parent the sanitized dimension value of the parent transaction, or null for a top level transaction
+	 */
+	void addSummary(String transaction, String parent, TransactionMetric metric, long timestamp,
+			Consumer<MintMetricsLine> consumer) {
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.count", metric.getTotal(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.error", metric.getFailures(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.hits", metric.getHits(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.mintime", metric.getMinTime(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.maxtime", metric.getMaxTime(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.meantime", metric.getMean(), timestamp));
+		for (double percentile : SUMMARY_PERCENTILES) {
+			consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.p" + (int) percentile,
+					metric.getPercentile(percentile), timestamp));
+		}
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.sentbytes", metric.getSentBytes(), timestamp));
+		consumer.accept(createLine(transaction, parent, "jmeter.usermetrics.summary.receivedbytes", metric.getReceivedBytes(), timestamp));
+	}
+
+	private MintMetricsLine createLine(String transaction, String parent, String metricKey, double metricValue,
+			long timestamp) {
+		MintMetricsLine line = new MintMetricsLine(metricKey);
+		addTransactionDimensions(transaction, line);
+		if (parent != null) {
+			line.addDimension(new MintDimension("parent", parent));
+		}
+		line.addGauge(new MintGauge(metricValue));
+		line.setTimestamp(timestamp);
+		return line;
+	}
+
+	private MintMetricsLine createCounterLine(String transaction, String parent, String metricKey, String dimensionKey,
+			String dimensionValue, long delta, long timestamp) {
+		MintMetricsLine line = new MintMetricsLine(metricKey);
+		addTransactionDimensions(transaction, line);
+		if (parent != null) {
+			line.addDimension(new MintDimension("parent", parent));
+		}
+		line.addDimension(new MintDimension(dimensionKey, dimensionValue));
+		line.setCounter(delta);
+		line.setTimestamp(timestamp);
+		return line;
+	}
+
+	private void addTransactionDimensions(String transaction, MintMetricsLine metricsLine) {
+		metricsLine.addDimension(new MintDimension("transaction", transaction));
+		transactionDimensions.forEach((key, value) -> {
+			if (!key.trim().isEmpty() && !value.trim().isEmpty())
+				metricsLine.addDimension(
+						new MintDimension(SchemalessMetricSanitizer.sanitizeDimensionIdentifier(key),
+								SchemalessMetricSanitizer.sanitizeDimensionValue(value)));
+		});
+	}
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.control.TransactionController;
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Aggregated values of a single transaction (sample label) within one time bucket.
+ * Counts follow the semantics of JMeter's SamplerMetric, but only primitive fields are kept.
+ */
+class TransactionMetric {
+	/**
+	 * The phases of a request: connect time, time to first byte (JMeter's latency, including the connect time)
+	 * and processing time (elapsed time - latency).
+	 */
+	static final String[] PHASES = { "connect", "ttfb", "processing" };
+	// limits the phase histograms to 3 * 192 * 8 bytes (4.5 KB) per transaction and time bucket, resolving up to ~32 s
+	private static final int PHASE_HISTOGRAM_BUCKETS = 192;
+	private long samples;
+	private long successes;
+	private long failures;
+	private long hits;
+	private long minTime = Long.MAX_VALUE;
+	private long maxTime = Long.MIN_VALUE;
+	private long sumTime;
+	private long sentBytes;
+	private long receivedBytes;
+	private final LatencyHistogram elapsedTimes = new LatencyHistogram();
+	// the label path of the parent, if the transaction is a sub-result
+	private final String parent;
+	// created with the first sample result which has a latency
+	private LatencyHistogram[] phaseTimes;
+	// created with the first sample result which has a response code or failed
+	private ResponseCodeCounts responseCodes;
+
+	TransactionMetric() {
+		this(null);
+	}
+
+	/**
+	 * @param parent the label path of the parent, if the transaction is the aggregate of a sub-result
+	 */
+	TransactionMetric(String parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * @return the label path of the parent, or null if the transaction is not a sub-result
+	 */
+	String getParent() {
+		return parent;
+	}
+
+	void add(SampleResult result) {
+		add(result, 1);
+	}
+
+	/**
+	 * Adds a sample result, which represents {@code weight} sample results (if only every n-th result is aggregated).
+	 */
+	void add(SampleResult result, int weight) {
+		final boolean network = !TransactionController.isFromTransactionController(result);
+		add(result.getTime(),
+				result.isSuccessful() ? result.getSampleCount() - result.getErrorCount() : 0,
+				result.isSuccessful() ? 0 : result.getErrorCount(),
+				countHits(result),
+				network ? result.getSentBytes() : 0,
+				network ? result.getBytesAsLong() : 0,
+				weight);
+		if (network) {
+			addPhases(result.getConnectTime(), result.getLatency(), result.getTime(), weight);
+		}
+		addResponseCode(result.getResponseCode(), weight);
+		if (!result.isSuccessful()) {
+			addFailure(ResponseCodeCounts.getFailureClass(result.getResponseCode(), hasFailedAssertion(result)),
+					(long) weight * result.getErrorCount());
+		}
+	}
+
+	private static boolean hasFailedAssertion(SampleResult result) {
+		for (AssertionResult assertionResult : result.getAssertionResults()) {
+			if (assertionResult.isFailure() || assertionResult.isError()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the response code of {@code count} requests, empty response codes are ignored.
+	 */
+	void addResponseCode(String responseCode, long count) {
+		if (responseCode != null && !responseCode.isEmpty()) {
+			getOrCreateResponseCodes().addCode(responseCode, count);
+		}
+	}
+
+	/**
+	 * @param failureClass the index of the class in {@link ResponseCodeCounts#FAILURE_CLASSES}
+	 */
+	void addFailure(int failureClass, long count) {
+		getOrCreateResponseCodes().addFailure(failureClass, count);
+	}
+
+	private ResponseCodeCounts getOrCreateResponseCodes() {
+		if (responseCodes == null) {
+			responseCodes = new ResponseCodeCounts();
+		}
+		return responseCodes;
+	}
+
+	/**
+	 * Adds the phases of a single request, requests without latency (e.g. of non network samplers) are ignored.
+	 */
+	void addPhases(long connectTime, long latency, long time, int weight) {
+		if (latency <= 0) {
+			return;
+		}
+		if (phaseTimes == null) {
+			phaseTimes = createPhaseTimes();
+		}
+		phaseTimes[0].add(connectTime, weight);
+		phaseTimes[1].add(latency, weight);
+		phaseTimes[2].add(Math.max(0, time - latency), weight);
+	}
+
+	private static LatencyHistogram[] createPhaseTimes() {
+		final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram(PHASE_HISTOGRAM_BUCKETS);
+		}
+		return histograms;
+	}
+
+	/**
+	 * Adds the values of a single sample result, e.g. a row of a JTL file.
+	 */
+	void add(long time, long successes, long failures, long hits, long sentBytes, long receivedBytes, int weight) {
+		this.successes += weight * successes;
+		this.failures += weight * failures;
+		this.hits += weight * hits;
+		this.sentBytes += weight * sentBytes;
+		this.receivedBytes += weight * receivedBytes;
+		samples += weight;
+		sumTime += weight * time;
+		minTime = Math.min(minTime, time);
+		maxTime = Math.max(maxTime, time);
+		elapsedTimes.add(time, weight);
+	}
+
+	private static long countHits(SampleResult result) {
+		long hits = TransactionController.isFromTransactionController(result) ? 0 : 1;
+		for (SampleResult subResult : result.getSubResults()) {
+			hits += countHits(subResult);
+		}
+		return hits;
+	}
+
+	void merge(TransactionMetric other) {
+		samples += other.samples;
+		successes += other.successes;
+		failures += other.failures;
+		hits += other.hits;
+		sumTime += other.sumTime;
+		minTime = Math.min(minTime, other.minTime);
+		maxTime = Math.max(maxTime, other.maxTime);
+		sentBytes += other.sentBytes;
+		receivedBytes += other.receivedBytes;
+		elapsedTimes.merge(other.elapsedTimes);
+		if (other.phaseTimes != null) {
+			if (phaseTimes == null) {
+				phaseTimes = createPhaseTimes();
+			}
+			for (int i = 0; i < phaseTimes.length; i++) {
+				phaseTimes[i].merge(other.phaseTimes[i]);
+			}
+		}
+		if (other.responseCodes != null) {
+			getOrCreateResponseCodes().merge(other.responseCodes);
+		}
+	}
+
+	boolean isEmpty() {
+		return samples == 0;
+	}
+
+	long getTotal() {
+		return successes + failures;
+	}
+
+	long getSuccesses() {
+		return successes;
+	}
+
+	long getFailures() {
+		return failures;
+	}
+
+	long getHits() {
+		return hits;
+	}
+
+	long getMinTime() {
+		return samples == 0 ? 0 : minTime;
+	}
+
+	long getMaxTime() {
+		return samples == 0 ? 0 : maxTime;
+	}
+
+	double getMean() {
+		return samples == 0 ? 0 : (double) sumTime / samples;
+	}
+
+	long getSumTime() {
+		return sumTime;
+	}
+
+	LatencyHistogram getElapsedTimes() {
+		return elapsedTimes;
+	}
+
+	/**
+	 * @param percentile the percentile between 0 and 100
+	 * @return the estimated elapsed time at the given percentile
+	 */
+	double getPercentile(double percentile) {
+		return elapsedTimes.getPercentile(percentile);
+	}
+
+	boolean hasPhases() {
+		return phaseTimes != null;
+	}
+
+	/**
+	 * @param phase the index of the phase in {@link #PHASES}
+	 * @return the histogram of the phase, or null if no request had a latency
+	 */
+	LatencyHistogram getPhaseTimes(int phase) {
+		return phaseTimes == null ? null : phaseTimes[phase];
+	}
+
+	/**
+	 * @return the counts of the response codes and failure classes, or null if no request had a response code or failed
+	 */
+	ResponseCodeCounts getResponseCodes() {
+		return responseCodes;
+	}
+
+	/**
+	 * @return the percentage of failed requests
+	 */
+	double getErrorRate() {
+		long total = getTotal();
+		return total == 0 ? 0 : 100.0 * failures / total;
+	}
+
+	long getSentBytes() {
+		return sentBytes;
+	}
+
+	long getReceivedBytes() {
+		return receivedBytes;
+	}
+}
@@ -23,6 +23,9 @@ public class MintMetricsLine {
 	String metricKey;
 	List<MintDimension> dimensions = new ArrayList<MintDimension>();
 	List<MintGauge> gauges = new ArrayList<MintGauge>();
+	long timestampMillis;
+	boolean counter;
+	long delta;
 
 	public MintMetricsLine(String metricKey) {
 		this.metricKey = metricKey;
@@ -30,7 +33,9 @@ public class MintMetricsLine {
 
     public MintMetricsLine(String metricKey, String displayName, String unit, String description) {
         this(metricKey);
-        addDimension(new MintDimension("dt.meta.unit", unit));
+        if (unit != null) {
+            addDimension(new MintDimension("dt.meta.unit", unit));
+        }
         addDimension(new MintDimension("dt.meta.description", description));
         addDimension(new MintDimension("dt.meta.displayname", displayName));
     }
@@ -43,6 +48,21 @@ public class MintMetricsLine {
 		gauges.add(gauge);
 	}
 
+	/**
+	 * Turns the line into a counter, which is sent as {@code count,delta=<delta>} instead of the gauges.
+	 */
+	public void setCounter(long delta) {
+		this.counter = true;
+		this.delta = delta;
+	}
+
+	/**
+	 * Sets the time of the measurement. If no timestamp is set, the time of printing the message is used.
+	 */
+	public void setTimestamp(long timestampMillis) {
+		this.timestampMillis = timestampMillis;
+	}
+
 	public String printMessage(boolean metadata) {
 		StringBuilder dimensionString = new StringBuilder();
 		StringBuilder gaugeString = new StringBuilder();
@@ -66,15 +86,17 @@ public class MintMetricsLine {
 			gaugeString.setLength(gaugeString.length() - 1);
 		}
 
-        long timestampMillis = System.currentTimeMillis();
+        long timestamp = timestampMillis > 0 ? timestampMillis : System.currentTimeMillis();
+        String type = counter ? "count" : "gauge";
+        String payload = counter ? "count,delta=" + delta : "gauge," + gaugeString;
         if (dimensionString.length() > 0) {
             if (metadata) {
-                return "#" + metricKey + " gauge " + dimensionString;
+                return "#" + metricKey + " " + type + " " + dimensionString;
             } else {
-                return metricKey + "," + dimensionString + " " + "gauge," + gaugeString + " " + timestampMillis;
+                return metricKey + "," + dimensionString + " " + payload + " " + timestamp;
             }
         } else {
-            return metricKey + " " + "gauge," + gaugeString + " " + timestampMillis;
+            return metricKey + " " + payload + " " + timestamp;
         }
 	}
 
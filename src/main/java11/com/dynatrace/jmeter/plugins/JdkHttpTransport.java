@@ -0,0 +1,99 @@
+/**
+ * Copyright 2018-2020 Dynatrace LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dynatrace.jmeter.plugins;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/2 transport based on {@code java.net.http.HttpClient}, which multiplexes all requests in flight as streams
+ * over one connection. It requires Java 11 and is loaded by {@link MetricTransport#create}.
+ * <p>
+ * The client negotiates HTTP/2 by ALPN for https urls and by an {@code Upgrade: h2c} request for http urls, and falls
+ * back to HTTP/1.1 if the server does not support HTTP/2. Requests which are sent before the first response has been
+ * received may still open further connections, the connection check of the listener upgrades the connection before
+ * the metrics are sent.
+ */
+class JdkHttpTransport implements MetricTransport {
+	private final URI uri;
+	private final String token;
+	private final ExecutorService executor;
+	private volatile HttpClient httpClient;
+
+	JdkHttpTransport(URL url, String token) throws URISyntaxException {
+		this.uri = url.toURI();
+		this.token = token;
+		// the client completes the responses on this executor, it is shut down with the transport
+		this.executor = Executors.newFixedThreadPool(2, runnable -> {
+			final Thread thread = new Thread(runnable, "JdkHttpTransport");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+				.connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT)).executor(executor).build();
+	}
+
+	@Override
+	public CompletableFuture<Response> send(byte[] body, String contentType) {
+		final HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofMillis(SOCKET_TIMEOUT))
+				.header("Content-Type", contentType).header("User-Agent", "ApacheJMeter 5")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(body));
+		if (token != null && !token.trim().isEmpty()) {
+			request.header("Authorization", "Api-Token " + token);
+		}
+		final HttpClient client = httpClient;
+		if (client == null) {
+			final CompletableFuture<Response> result = new CompletableFuture<>();
+			result.completeExceptionally(new CancellationException("Transport is closed"));
+			return result;
+		}
+		return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString())
+				.thenApply(response -> new Response(response.statusCode(),
+						response.headers().firstValue("Retry-After").orElse(null), response.body()));
+	}
+
+	@Override
+	public void close() {
+		final HttpClient client = httpClient;
+		httpClient = null;
+		// the client is closeable since Java 21, before its connections and selector thread are released when the
+		// dropped client is garbage collected. Without the executor, responses which are still in flight are not completed.
+		if (client instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) client).close();
+			} catch (Exception ex) {
+				// HttpClient.close does not throw checked exceptions
+			}
+		}
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
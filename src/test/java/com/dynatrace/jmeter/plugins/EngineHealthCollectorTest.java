@@ -0,0 +1,56 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EngineHealthCollectorTest {
+
+	@Test
+	public void testMetrics() {
+		final Map<String, Double> metrics = collect(new EngineHealthCollector(() -> 0.25, () -> 0.5));
+		assertEquals(25.0, metrics.get("jmeter.engine.cpu.process"), 1e-9);
+		assertEquals(50.0, metrics.get("jmeter.engine.cpu.system"), 1e-9);
+		assertTrue(metrics.get("jmeter.engine.gc.count") >= 0);
+		assertTrue(metrics.get("jmeter.engine.gc.time") >= 0);
+		assertTrue(metrics.get("jmeter.engine.heap.used") > 0);
+		assertTrue(metrics.get("jmeter.engine.threads") > 0);
+	}
+
+	@Test
+	public void testUnavailableCpuLoadIsNotSent() {
+		final Map<String, Double> metrics = collect(new EngineHealthCollector(() -> -1, () -> -1));
+		assertFalse(metrics.containsKey("jmeter.engine.cpu.process"));
+		assertFalse(metrics.containsKey("jmeter.engine.cpu.system"));
+		assertTrue(metrics.containsKey("jmeter.engine.threads"));
+	}
+
+	@Test
+	public void testPlatformCpuLoad() {
+		final Map<String, Double> metrics = collect(new EngineHealthCollector());
+		for (String key : new String[] { "jmeter.engine.cpu.process", "jmeter.engine.cpu.system" }) {
+			if (metrics.containsKey(key)) {
+				assertTrue(key, metrics.get(key) >= 0 && metrics.get(key) <= 100);
+			}
+		}
+	}
+
+	@Test
+	public void testSafepointTimeIsOnlyCollectedOnJava8() {
+		final Map<String, Double> metrics = collect(new EngineHealthCollector(() -> -1, () -> -1));
+		if (!"1.8".equals(System.getProperty("java.specification.version"))) {
+			assertFalse(metrics.containsKey("jmeter.engine.safepoint.time"));
+		}
+	}
+
+	private static Map<String, Double> collect(EngineHealthCollector collector) {
+		final Map<String, Double> metrics = new HashMap<>();
+		collector.collect(metrics::put);
+		return metrics;
+	}
+}
@@ -0,0 +1,39 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GaugeHeartbeatTest {
+
+	@Test
+	public void testUnchangedGaugesAreSentOnHeartbeat() {
+		final GaugeHeartbeat heartbeat = new GaugeHeartbeat(3);
+		assertTrue(heartbeat.shouldSend("gauge", 1));
+		heartbeat.nextInterval();
+		assertFalse(heartbeat.shouldSend("gauge", 1));
+		heartbeat.nextInterval();
+		assertFalse(heartbeat.shouldSend("gauge", 1));
+		heartbeat.nextInterval();
+		assertTrue(heartbeat.shouldSend("gauge", 1));
+	}
+
+	@Test
+	public void testChangedGaugesAreSent() {
+		final GaugeHeartbeat heartbeat = new GaugeHeartbeat(3);
+		assertTrue(heartbeat.shouldSend("gauge", 1));
+		assertTrue(heartbeat.shouldSend("other", 1));
+		heartbeat.nextInterval();
+		assertTrue(heartbeat.shouldSend("gauge", 2));
+		assertFalse(heartbeat.shouldSend("other", 1));
+	}
+
+	@Test
+	public void testHeartbeatOfOneSendsAllGauges() {
+		final GaugeHeartbeat heartbeat = new GaugeHeartbeat(1);
+		assertTrue(heartbeat.shouldSend("gauge", 1));
+		heartbeat.nextInterval();
+		assertTrue(heartbeat.shouldSend("gauge", 1));
+	}
+}
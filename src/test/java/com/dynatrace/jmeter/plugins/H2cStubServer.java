@@ -0,0 +1,264 @@
+package com.dynatrace.jmeter.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal local ingest stub which answers every POST with 200. It serves HTTP/1.1 with keep-alive and switches
+ * to HTTP/2 if the client asks for an {@code Upgrade: h2c}, as the Java 11 HTTP client does for http urls. The
+ * HTTP/2 side only implements what the stub needs: the request headers are not decoded, flow control windows are
+ * kept open and every response is a single HEADERS frame with {@code :status 200}.
+ */
+class H2cStubServer implements Closeable {
+	private static final int DATA = 0;
+	private static final int HEADERS = 1;
+	private static final int SETTINGS = 4;
+	private static final int PING = 6;
+	private static final int GOAWAY = 7;
+	private static final int WINDOW_UPDATE = 8;
+	private static final int END_STREAM = 0x1;
+	private static final int ACK = 0x1;
+	private static final int END_HEADERS = 0x4;
+	// ":status: 200" from the static HPACK table
+	private static final byte[] STATUS_200 = { (byte) 0x88 };
+	private static final int WINDOW = 1 << 30;
+	private final long latencyMillis;
+	private final ServerSocket serverSocket;
+	private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+		final Thread thread = new Thread(runnable, "H2cStubServer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final ScheduledExecutorService responses = Executors.newScheduledThreadPool(4, runnable -> {
+		final Thread thread = new Thread(runnable, "H2cStubServer-response");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger acceptedConnections = new AtomicInteger();
+	private final AtomicInteger http2Connections = new AtomicInteger();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicLong receivedBytes = new AtomicLong();
+
+	/**
+	 * @param latencyMillis the time the stub takes for every response
+	 */
+	H2cStubServer(long latencyMillis) throws IOException {
+		this.latencyMillis = latencyMillis;
+		this.serverSocket = new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+		connections.execute(this::accept);
+	}
+
+	String getUrl() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/api/v2/metrics/ingest";
+	}
+
+	int getAcceptedConnections() {
+		return acceptedConnections.get();
+	}
+
+	int getHttp2Connections() {
+		return http2Connections.get();
+	}
+
+	int getRequests() {
+		return requests.get();
+	}
+
+	long getReceivedBytes() {
+		return receivedBytes.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		connections.shutdownNow();
+		responses.shutdownNow();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				acceptedConnections.incrementAndGet();
+				sockets.add(socket);
+				connections.execute(() -> handle(socket));
+			} catch (IOException ex) {
+				// closed
+			}
+		}
+	}
+
+	private void handle(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			Map<String, String> headers;
+			while ((headers = readHead(in)) != null) {
+				final int length = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+				in.readFully(new byte[length]);
+				receivedBytes.addAndGet(length);
+				requests.incrementAndGet();
+				if ("h2c".equalsIgnoreCase(headers.get("upgrade"))) {
+					serveHttp2(in, out);
+					return;
+				}
+				Thread.sleep(latencyMillis);
+				out.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+				out.flush();
+			}
+		} catch (IOException | InterruptedException ex) {
+			// closed by the client or the stub
+		} finally {
+			sockets.remove(socket);
+			try {
+				socket.close();
+			} catch (IOException ex) {
+				// ignore
+			}
+		}
+	}
+
+	private void serveHttp2(DataInputStream in, OutputStream out) throws IOException {
+		http2Connections.incrementAndGet();
+		synchronized (out) {
+			out.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+					.getBytes(StandardCharsets.US_ASCII));
+			// SETTINGS_MAX_CONCURRENT_STREAMS = 1000, SETTINGS_INITIAL_WINDOW_SIZE = WINDOW
+			writeFrame(out, SETTINGS, 0, 0, new byte[] { 0, 3, 0, 0, 0x03, (byte) 0xe8, 0, 4,
+					(byte) (WINDOW >>> 24), (byte) (WINDOW >>> 16), (byte) (WINDOW >>> 8), (byte) WINDOW });
+			writeFrame(out, WINDOW_UPDATE, 0, 0, toBytes(WINDOW - 65535));
+			out.flush();
+		}
+		// the upgraded request is stream 1
+		respond(out, 1);
+		in.readFully(new byte[24]);
+		final byte[] header = new byte[9];
+		while (true) {
+			in.readFully(header);
+			final int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | header[2] & 0xff;
+			final int type = header[3];
+			final int flags = header[4];
+			final int streamId = ((header[5] & 0x7f) << 24 | (header[6] & 0xff) << 16 | (header[7] & 0xff) << 8
+					| header[8] & 0xff);
+			final byte[] payload = new byte[length];
+			in.readFully(payload);
+			switch (type) {
+				case DATA:
+					receivedBytes.addAndGet(length);
+					if (length > 0) {
+						synchronized (out) {
+							writeFrame(out, WINDOW_UPDATE, 0, 0, toBytes(length));
+							out.flush();
+						}
+					}
+					if ((flags & END_STREAM) != 0) {
+						requests.incrementAndGet();
+						respond(out, streamId);
+					}
+					break;
+				case HEADERS:
+					if ((flags & END_STREAM) != 0) {
+						requests.incrementAndGet();
+						respond(out, streamId);
+					}
+					break;
+				case SETTINGS:
+					if ((flags & ACK) == 0) {
+						synchronized (out) {
+							writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+							out.flush();
+						}
+					}
+					break;
+				case PING:
+					if ((flags & ACK) == 0) {
+						synchronized (out) {
+							writeFrame(out, PING, ACK, 0, payload);
+							out.flush();
+						}
+					}
+					break;
+				case GOAWAY:
+					throw new EOFException("GOAWAY");
+				default:
+					// priority, window updates, resets and continuations are ignored
+			}
+		}
+	}
+
+	private void respond(OutputStream out, int streamId) {
+		responses.schedule(() -> {
+			synchronized (out) {
+				try {
+					writeFrame(out, HEADERS, END_STREAM | END_HEADERS, streamId, STATUS_200);
+					out.flush();
+				} catch (IOException ex) {
+					// closed by the client
+				}
+			}
+		}, latencyMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static void writeFrame(OutputStream out, int type, int flags, int streamId, byte[] payload) throws IOException {
+		out.write(new byte[] { (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+				(byte) type, (byte) flags });
+		out.write(toBytes(streamId));
+		out.write(payload);
+	}
+
+	private static byte[] toBytes(int value) {
+		return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+	}
+
+	/**
+	 * @return the lower case header names and their values, or null at the end of the stream
+	 */
+	private static Map<String, String> readHead(DataInputStream in) throws IOException {
+		final Map<String, String> headers = new HashMap<>();
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		boolean requestLine = true;
+		int b;
+		while ((b = in.read()) >= 0) {
+			if (b == '\n') {
+				final String text = new String(line.toByteArray(), StandardCharsets.US_ASCII).trim();
+				line.reset();
+				if (text.isEmpty()) {
+					return headers;
+				}
+				final int colon = text.indexOf(':');
+				if (!requestLine && colon > 0) {
+					headers.put(text.substring(0, colon).trim().toLowerCase(), text.substring(colon + 1).trim());
+				}
+				requestLine = false;
+			} else {
+				line.write(b);
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,77 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IngestRateControllerTest {
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void testTokenBucket() {
+		final IngestRateController controller = new IngestRateController(1000, 0, 10, 5_000, 0);
+		assertEquals(0, controller.tryAcquire(1500, 100, 0));
+		controller.onResponse(202, 10, null, 0);
+		// 500 lines overdrawn, wait half a second
+		assertEquals(SECOND / 2, controller.tryAcquire(100, 100, 0));
+		assertEquals(0, controller.tryAcquire(100, 100, SECOND / 2));
+	}
+
+	@Test
+	public void testInFlightLimitIsAdapted() {
+		final IngestRateController controller = new IngestRateController(0, 0, 8, 5_000, 0);
+		assertEquals(2, controller.getInFlightLimit());
+		assertEquals(0, controller.tryAcquire(1, 1, 0));
+		assertEquals(0, controller.tryAcquire(1, 1, 0));
+		assertEquals(IngestRateController.WAIT_FOR_COMPLETION, controller.tryAcquire(1, 1, 0));
+		controller.onResponse(202, 10, null, 0);
+		controller.onResponse(202, 10, null, 0);
+
+		long now = 0;
+		for (int i = 0; i < 100; i++) {
+			assertEquals(0, controller.tryAcquire(1, 1, now));
+			controller.onResponse(202, 10, null, now);
+		}
+		assertEquals(8, controller.getInFlightLimit());
+
+		// slow responses of the same round trip only halve the limit once
+		now += SECOND;
+		for (int i = 0; i < 3; i++) {
+			controller.tryAcquire(1, 1, now);
+		}
+		controller.onResponse(202, 6_000, null, now);
+		controller.onResponse(202, 6_000, null, now);
+		assertEquals(4, controller.getInFlightLimit());
+		controller.onFailure(6_000, now + TimeUnit.SECONDS.toNanos(7));
+		assertEquals(2, controller.getInFlightLimit());
+		assertEquals(0, controller.getInFlight());
+	}
+
+	@Test
+	public void testRetryAfterBlocksRequests() {
+		final IngestRateController controller = new IngestRateController(0, 0, 4, 5_000, 0);
+		assertEquals(0, controller.tryAcquire(1, 1, 0));
+		controller.onResponse(429, 10, "2", 0);
+		assertEquals(2 * SECOND, controller.tryAcquire(1, 1, 0));
+		assertEquals(SECOND, controller.tryAcquire(1, 1, SECOND));
+		assertEquals(0, controller.tryAcquire(1, 1, 2 * SECOND));
+		assertEquals(1, controller.getInFlightLimit());
+	}
+
+	@Test
+	public void testParseRetryAfter() {
+		final long now = 1_600_000_000_000L;
+		assertEquals(-1, IngestRateController.parseRetryAfter(null, now));
+		assertEquals(-1, IngestRateController.parseRetryAfter("soon", now));
+		assertEquals(120_000, IngestRateController.parseRetryAfter(" 120 ", now));
+		final String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(now + 30_000).atZone(ZoneOffset.UTC));
+		assertEquals(30_000, IngestRateController.parseRetryAfter(date, now));
+		assertTrue(IngestRateController.isThrottled(503));
+	}
+}
@@ -0,0 +1,190 @@
+package com.dynatrace.jmeter.plugins;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JtlBackfillTest {
+	private static final long START = 1_600_000_000_000L;
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private HttpServer server;
+	private final List<String> receivedLines = new CopyOnWriteArrayList<>();
+	private final AtomicLong receivedBytes = new AtomicLong();
+	private final AtomicInteger requests = new AtomicInteger();
+
+	@Before
+	public void setup() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/v2/metrics/ingest", exchange -> {
+			final String body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+			receivedLines.addAll(Arrays.asList(body.split("\\R")));
+			receivedBytes.addAndGet(body.length());
+			requests.incrementAndGet();
+			exchange.sendResponseHeaders(body.isEmpty() ? 400 : 202, -1);
+			exchange.close();
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testParseWithMultipleChunks() throws IOException {
+		final File jtl = createJtl(1000);
+		final JtlParser.JtlAggregate aggregate = new JtlParser(10_000, 1024).parse(jtl.toPath(), new ForkJoinPool(4));
+		assertEquals(1001, aggregate.getRows());
+		assertEquals(1, aggregate.getInvalidRows());
+		long total = 0;
+		for (TransactionMetric metric : aggregate.getBuckets().get(START).values()) {
+			total += metric.getTotal();
+		}
+		assertEquals(500, total);
+		assertEquals(100, aggregate.getBuckets().get(START).get("checkout, \"pay\"").getTotal());
+		assertEquals(34, aggregate.getBuckets().get(START).get("checkout, \"pay\"").getFailures());
+	}
+
+	@Test
+	public void testParseQuotedFieldsWithLineBreaksAcrossChunks() throws IOException {
+		final StringBuilder jtl = new StringBuilder(
+				"timeStamp,elapsed,label,responseCode,responseMessage,success,failureMessage,bytes,sentBytes\n");
+		for (int i = 0; i < 20; i++) {
+			jtl.append(START + i * 100).append(",100,login,500,\"Internal\nServer Error\",false,")
+					.append("\"Test failed: text expected to contain /\"\"welcome\"\"/\r\n")
+					.append("but the response was:\n<html>\n").append(i).append("</html>\",1000,100\n");
+		}
+		final File file = folder.newFile("multiline.jtl");
+		Files.write(file.toPath(), jtl.toString().getBytes(StandardCharsets.UTF_8));
+
+		// the chunks are shorter than a row, so every chunk boundary would fall within a quoted field
+		final JtlParser.JtlAggregate aggregate = new JtlParser(10_000, 64).parse(file.toPath(), new ForkJoinPool(4));
+		assertEquals(20, aggregate.getRows());
+		assertEquals(0, aggregate.getInvalidRows());
+		final TransactionMetric login = aggregate.getBuckets().get(START).get("login");
+		assertEquals(20, login.getTotal());
+		assertEquals(20, login.getFailures());
+		assertEquals(20_000, login.getReceivedBytes());
+	}
+
+	@Test
+	public void testBackfillWithCheckpoint() throws Exception {
+		final File jtl = createJtl(1000);
+		final File checkpoint = new File(folder.getRoot(), "checkpoint");
+		final String[] args = { "--url", "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/metrics/ingest",
+				"--token", "token", "--checkpoint", checkpoint.getPath(), "--checkpointBuckets", "1", jtl.getPath() };
+
+		assertEquals(2, new JtlBackfill(args, new MintMetricSender()).run());
+		final List<String> countLines = receivedLines.stream()
+				.filter(line -> line.startsWith("jmeter.usermetrics.transaction.count,"))
+				.collect(Collectors.toList());
+		assertEquals(10, countLines.size());
+		assertTrue(countLines.stream().anyMatch(line -> line.endsWith(" " + (START + 10_000))));
+		assertTrue(countLines.stream().anyMatch(line -> line.endsWith(" " + (START + 20_000))));
+		assertEquals(String.valueOf(START + 20_000),
+				new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8));
+
+		receivedLines.clear();
+		assertEquals(0, new JtlBackfill(args, new MintMetricSender()).run());
+		assertTrue(receivedLines.stream().noneMatch(line -> line.startsWith("jmeter.usermetrics.transaction.")));
+	}
+
+	@Test
+	public void testBackfillStreamsTheBucketsOfMultipleFilesInTimeOrder() throws Exception {
+		final File jtl1 = createJtl("results1.jtl", 50, 3);
+		final File jtl2 = createJtl("results2.jtl", 50, 3);
+		final String[] args = { "--url", "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/metrics/ingest",
+				"--bucketSeconds", "1", "--parallelism", "1", "--checkpointBuckets", "1", jtl1.getPath(), jtl2.getPath() };
+
+		assertEquals(50, new JtlBackfill(args, new MintMetricSender(), 1024).run());
+		final Map<Long, Long> counts = getCountsByTimestamp();
+		assertEquals(50, counts.size());
+		// every bucket has been sent once, with the rows of both files
+		counts.values().forEach(count -> assertEquals(Long.valueOf(2 * 3), count));
+		final List<Long> timestamps = receivedLines.stream()
+				.filter(line -> line.startsWith("jmeter.usermetrics.transaction.count,"))
+				.map(line -> Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)))
+				.collect(Collectors.toList());
+		final List<Long> sortedTimestamps = new ArrayList<>(timestamps);
+		sortedTimestamps.sort(null);
+		assertEquals(sortedTimestamps, timestamps);
+	}
+
+	@Test
+	public void testBackfillWindowLargerThanPendingLimit() throws Exception {
+		final File jtl = createJtl("results.jtl", 2000, 25);
+		final String[] args = { "--url", "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/metrics/ingest",
+				"--bucketSeconds", "1", "--maxInFlight", "1", "--checkpointBuckets", "100000", jtl.getPath() };
+
+		assertEquals(2000, new JtlBackfill(args, new MintMetricSender()).run());
+		assertTrue(receivedBytes.get() > MintMetricSender.MAX_PENDING_BYTES);
+		// the lines of several buckets are sent in full messages, besides the connection check, metadata and last message
+		assertTrue(requests.get() <= receivedLines.size() / (MintMetricSender.MAX_LINES_PER_MESSAGE - 1) + 3);
+		final Map<Long, Long> counts = getCountsByTimestamp();
+		assertEquals(2000, counts.size());
+		counts.values().forEach(count -> assertEquals(Long.valueOf(25), count));
+	}
+
+	private Map<Long, Long> getCountsByTimestamp() {
+		return receivedLines.stream()
+				.filter(line -> line.startsWith("jmeter.usermetrics.transaction.count,"))
+				.map(line -> line.split(" "))
+				.collect(Collectors.groupingBy(parts -> Long.parseLong(parts[2]),
+						Collectors.summingLong(parts -> (long) Double.parseDouble(parts[1].substring("gauge,".length())))));
+	}
+
+	/**
+	 * Creates a file with one row per label and bucket of one second, in the order of the end time.
+	 */
+	private File createJtl(String name, int buckets, int labels) throws IOException {
+		final StringBuilder jtl = new StringBuilder("timeStamp,elapsed,label,responseCode,success,bytes,sentBytes\n");
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			for (int label = 0; label < labels; label++) {
+				jtl.append(START + bucket * 1000L + label * 10).append(",5,label").append(label).append(",200,true,1000,100\n");
+			}
+		}
+		final File file = folder.newFile(name);
+		Files.write(file.toPath(), jtl.toString().getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private File createJtl(int rows) throws IOException {
+		final StringBuilder jtl = new StringBuilder(
+				"timeStamp,elapsed,label,responseCode,responseMessage,threadName,dataType,success,failureMessage,bytes,sentBytes\n");
+		for (int i = 0; i < rows; i++) {
+			final long endTime = START + (i < rows / 2 ? 1_000 : 11_000);
+			final String label = i % 5 == 0 ? "\"checkout, \"\"pay\"\"\"" : "label" + (i % 5);
+			final boolean success = i % 5 != 0 || i % 3 != 0;
+			jtl.append(endTime - 100).append(",100,").append(label).append(",200,OK,Thread 1-1,text,")
+					.append(success).append(",,1000,100\r\n");
+		}
+		jtl.append("invalid row\n");
+		final File file = folder.newFile("results.jtl");
+		Files.write(file.toPath(), jtl.toString().getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,68 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LabelRegistryTest {
+
+	@Test
+	public void testLabelIsForgottenAfterTheIdleIntervals() {
+		final LabelRegistry registry = new LabelRegistry(Pattern.compile(""), 3);
+		registry.get("login");
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(registry.nextInterval().isEmpty());
+		}
+		assertEquals(Collections.singletonList("login"), registry.nextInterval());
+		assertTrue(registry.nextInterval().isEmpty());
+	}
+
+	@Test
+	public void testActiveLabelIsKept() {
+		final LabelRegistry registry = new LabelRegistry(Pattern.compile(""), 3);
+		final LabelRegistry.Label label = registry.get("login");
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(registry.nextInterval().isEmpty());
+		}
+		// a sample within the last idle interval restarts the idle intervals
+		assertSame(label, registry.get("login"));
+		for (int i = 0; i < 3; i++) {
+			assertTrue(registry.nextInterval().isEmpty());
+		}
+		assertEquals(Collections.singletonList("login"), registry.nextInterval());
+	}
+
+	@Test
+	public void testForgottenLabelIsCreatedAgain() {
+		final LabelRegistry registry = new LabelRegistry(Pattern.compile(""), 0);
+		final LabelRegistry.Label label = registry.get("login");
+
+		assertEquals(Collections.singletonList("login"), registry.nextInterval());
+		assertNotSame(label, registry.get("login"));
+	}
+
+	@Test
+	public void testSamplersRegexMatchIsCachedWithTheSanitizedLabel() {
+		final LabelRegistry registry = new LabelRegistry(Pattern.compile("^check out,"), 10);
+
+		final LabelRegistry.Label checkout = registry.get("check out,pay=1");
+		assertTrue(checkout.isSent());
+		// the regex is matched against the original label, the dimension value is sanitized
+		assertEquals("\"check out,pay=1\"", checkout.getDimensionValue());
+		assertSame(checkout, registry.get("check out,pay=1"));
+
+		final LabelRegistry.Label login = registry.get("login page");
+		assertFalse(login.isSent());
+		assertEquals("\"login page\"", login.getDimensionValue());
+		assertSame(login, registry.get("login page"));
+	}
+}
@@ -0,0 +1,64 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmptyHistogram() {
+		assertEquals(0, new LatencyHistogram().getPercentile(95), 0.0);
+	}
+
+	@Test
+	public void testIndexIsMonotonic() {
+		int lastIndex = 0;
+		for (long value = 0; value < 1_000_000; value++) {
+			final int index = LatencyHistogram.index(value);
+			assertTrue(index == lastIndex || index == lastIndex + 1);
+			lastIndex = index;
+		}
+	}
+
+	@Test
+	public void testPercentileIsWithinRelativeError() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 10_000; value++) {
+			histogram.add(value);
+		}
+		assertEquals(10_000, histogram.getTotalCount());
+		assertEquals(5_000, histogram.getPercentile(50), 5_000 / 16.0);
+		assertEquals(9_500, histogram.getPercentile(95), 9_500 / 16.0);
+		assertEquals(10_000, histogram.getPercentile(100), 0.0);
+		assertEquals(1, histogram.getPercentile(0), 0.0);
+	}
+
+	@Test
+	public void testMerge() {
+		final LatencyHistogram histogram1 = new LatencyHistogram();
+		final LatencyHistogram histogram2 = new LatencyHistogram();
+		histogram1.add(10, 3);
+		histogram2.add(5_000);
+		histogram1.merge(histogram2);
+		assertEquals(4, histogram1.getTotalCount());
+		assertEquals(10, histogram1.getPercentile(75), 0.0);
+		assertEquals(5_000, histogram1.getPercentile(100), 0.0);
+	}
+
+	@Test
+	public void testMaxBuckets() {
+		final LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.index(1_000) + 1);
+		final LatencyHistogram unlimited = new LatencyHistogram();
+		unlimited.add(100_000);
+		histogram.add(10);
+		histogram.add(50_000, 2);
+		histogram.merge(unlimited);
+		assertEquals(4, histogram.getTotalCount());
+		assertEquals(10, histogram.getPercentile(25), 0.0);
+		// values above the last bucket are counted in the last bucket
+		assertEquals(1_000, histogram.getPercentile(50), 1_000 / 16.0);
+		assertEquals(100_000, histogram.getPercentile(100), 0.0);
+	}
+}
@@ -0,0 +1,99 @@
+package com.dynatrace.jmeter.plugins;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricTransportTest {
+
+	@Test
+	public void testApacheTransport() throws Exception {
+		testSend(MetricTransport.APACHE);
+	}
+
+	@Test
+	public void testAutoIsAnAliasOfApache() throws Exception {
+		final MetricTransport transport = MetricTransport.create("test", MetricTransport.AUTO,
+				new URL("http://127.0.0.1:1/api/v2/metrics/ingest"), "token", 2);
+		try {
+			assertTrue(transport instanceof ApacheHttpTransport);
+		} finally {
+			transport.close();
+		}
+	}
+
+	@Test
+	public void testHttp2Transport() throws Exception {
+		testSend(MetricTransport.HTTP2);
+	}
+
+	@Test
+	public void testHttp2TransportMultiplexesRequests() throws Exception {
+		try (H2cStubServer server = new H2cStubServer(50)) {
+			final MetricTransport transport = MetricTransport.create("test", MetricTransport.HTTP2,
+					new URL(server.getUrl()), "token", 10);
+			Assume.assumeTrue("HTTP/2 transport requires Java 11", !(transport instanceof ApacheHttpTransport));
+			try {
+				// the first request upgrades the connection
+				assertEquals(200, transport.send(new byte[10], "text/plain").get(10, TimeUnit.SECONDS).getStatusCode());
+				final List<CompletableFuture<MetricTransport.Response>> responses = new ArrayList<>();
+				for (int i = 0; i < 20; i++) {
+					responses.add(transport.send(new byte[100_000], "text/plain"));
+				}
+				for (CompletableFuture<MetricTransport.Response> response : responses) {
+					assertEquals(200, response.get(10, TimeUnit.SECONDS).getStatusCode());
+				}
+				assertEquals(1, server.getAcceptedConnections());
+				assertEquals(1, server.getHttp2Connections());
+				assertEquals(21, server.getRequests());
+				assertEquals(10 + 20 * 100_000, server.getReceivedBytes());
+			} finally {
+				transport.close();
+			}
+		}
+	}
+
+	private void testSend(String type) throws Exception {
+		final List<String> received = new CopyOnWriteArrayList<>();
+		final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/v2/metrics/ingest", exchange -> {
+			received.add(exchange.getRequestHeaders().getFirst("Authorization"));
+			received.add(exchange.getRequestHeaders().getFirst("Content-Type"));
+			received.add(IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8));
+			final byte[] body = "throttled".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Retry-After", "2");
+			exchange.sendResponseHeaders(429, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.start();
+		final MetricTransport transport = MetricTransport.create("test", type,
+				new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/metrics/ingest"), "token", 2);
+		try {
+			final MetricTransport.Response response = transport.send("line 1".getBytes(StandardCharsets.UTF_8),
+					"text/plain; charset=UTF-8").get(10, TimeUnit.SECONDS);
+			assertEquals(429, response.getStatusCode());
+			assertEquals("2", response.getRetryAfter());
+			assertEquals("throttled", response.getBody());
+			assertEquals("Api-Token token", received.get(0));
+			assertEquals("text/plain; charset=UTF-8", received.get(1));
+			assertEquals("line 1", received.get(2));
+		} finally {
+			transport.close();
+			server.stop(0);
+		}
+	}
+}
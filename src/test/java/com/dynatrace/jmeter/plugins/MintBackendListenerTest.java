@@ -0,0 +1,120 @@
+package com.dynatrace.jmeter.plugins;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.visualizers.backend.BackendListenerContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MintBackendListenerTest {
+	private HttpServer server;
+	private final List<String> receivedLines = new CopyOnWriteArrayList<>();
+
+	@Before
+	public void setup() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/v2/metrics/ingest", exchange -> {
+			final String body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+			receivedLines.addAll(Arrays.asList(body.split("\\R")));
+			exchange.sendResponseHeaders(body.isEmpty() ? 400 : 202, -1);
+			exchange.close();
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testSummaryOfTheWholeTest() throws Exception {
+		final Map<String, String> parameters = new HashMap<>();
+		parameters.put("name", "test");
+		parameters.put("dynatraceMetricIngestUrl",
+				"http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/metrics/ingest");
+		parameters.put("dynatraceApiToken", "token");
+		parameters.put("bucketSeconds", "1");
+		parameters.put("subResultsDepth", "1");
+		parameters.put("engineMetrics", "false");
+		final BackendListenerContext context = new BackendListenerContext(parameters);
+		final MintBackendListener listener = new MintBackendListener();
+		listener.setupTest(context);
+
+		// the samples end in different time buckets, which are merged into the summary
+		final long now = System.currentTimeMillis();
+		final List<SampleResult> results = new ArrayList<>();
+		for (int i = 0; i < 90; i++) {
+			results.add(createSample("login", now + 1_000, 100));
+		}
+		for (int i = 0; i < 10; i++) {
+			results.add(createSample("login", now + 3_000, 1_000));
+		}
+		for (int i = 0; i < 20; i++) {
+			final SampleResult checkout = createSample("checkout", now + 2_000, 500);
+			final SampleResult step = createSample("step", now + 2_000, 200);
+			checkout.addRawSubResult(step);
+			// JMeter renames the sub-results to "<parent>-<index>" unless subresults.disable_renaming is set
+			step.setSampleLabel("step");
+			results.add(checkout);
+		}
+		listener.handleSampleResults(results, context);
+		listener.teardownTest(context);
+
+		assertEquals(100, getSummary("count", "login"), 0.0);
+		assertEquals(100, getSummary("mintime", "login"), 0.0);
+		assertEquals(1_000, getSummary("maxtime", "login"), 0.0);
+		assertEquals(190, getSummary("meantime", "login"), 0.0);
+		// the percentiles of the whole test are computed from the merged histograms of all buckets
+		assertEquals(100, getSummary("p50", "login"), 5);
+		assertEquals(1_000, getSummary("p95", "login"), 50);
+		assertEquals(20, getSummary("count", "checkout"), 0.0);
+		assertEquals(20, getSummary("count", "\"checkout > step\""), 0.0);
+		assertTrue(findSummary("count", "\"checkout > step\"").contains(",parent=checkout"));
+
+		// the summary of all transactions only contains the top level samples
+		assertEquals(120, getSummary("count", "all"), 0.0);
+		assertEquals(100, getSummary("mintime", "all"), 0.0);
+		assertEquals(1_000, getSummary("maxtime", "all"), 0.0);
+		assertEquals((90 * 100 + 10 * 1_000 + 20 * 500) / 120.0, getSummary("meantime", "all"), 1e-9);
+	}
+
+	private double getSummary(String metric, String transaction) {
+		final String line = findSummary(metric, transaction);
+		assertNotNull("No summary " + metric + " of " + transaction, line);
+		final String value = line.substring(line.indexOf(" gauge,") + " gauge,".length(), line.lastIndexOf(' '));
+		return Double.parseDouble(value);
+	}
+
+	private String findSummary(String metric, String transaction) {
+		final String prefix = "jmeter.usermetrics.summary." + metric + ",transaction=" + transaction + ",";
+		final String lastPrefix = "jmeter.usermetrics.summary." + metric + ",transaction=" + transaction + " ";
+		return receivedLines.stream()
+				.filter(line -> line.startsWith(prefix) || line.startsWith(lastPrefix))
+				.findFirst().orElse(null);
+	}
+
+	private static SampleResult createSample(String label, long endTime, long elapsed) {
+		final SampleResult result = new SampleResult(endTime, elapsed);
+		result.setSampleLabel(label);
+		result.setSuccessful(true);
+		result.setSampleCount(1);
+		return result;
+	}
+}
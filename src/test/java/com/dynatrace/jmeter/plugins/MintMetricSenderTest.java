@@ -4,13 +4,23 @@ import com.dynatrace.mint.MintDimension;
 import com.dynatrace.mint.MintGauge;
 import com.dynatrace.mint.MintMetricsLine;
 import com.dynatrace.mint.SchemalessMetricSanitizer;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class MintMetricSenderTest {
 	private MintMetricSender mintMetricSender;
@@ -86,6 +96,80 @@ public class MintMetricSenderTest {
                 + "dt.meta.description=\"the minimum number of active threads\",dt.meta.displayname=\"JMeter - min active threads\"", metadataString);
     }
 
+	@Test
+	public void testThrottledRequestsAreRetried() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		final List<String> receivedLines = new CopyOnWriteArrayList<>();
+		final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/v2/metrics/ingest", exchange -> {
+			final String body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+			if (requests.incrementAndGet() <= 2) {
+				exchange.getResponseHeaders().add("Retry-After", "1");
+				exchange.sendResponseHeaders(429, -1);
+			} else {
+				receivedLines.addAll(Arrays.asList(body.split("\\R")));
+				exchange.sendResponseHeaders(202, -1);
+			}
+			exchange.close();
+		});
+		server.start();
+		try {
+			mintMetricSender.setup("test", "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/metrics/ingest",
+					"token");
+			for (int i = 0; i < 3 * MintMetricSender.MAX_LINES_PER_MESSAGE; i++) {
+				mintMetricSender.addMetric(createLine("metric-key-" + i, i, 1, "dimKey", "dimValue"));
+			}
+			mintMetricSender.writeAndSendMetrics();
+			assertTrue(mintMetricSender.awaitCompletion(30, TimeUnit.SECONDS));
+			assertEquals(0, mintMetricSender.getFailedRequests());
+			assertEquals(3 * MintMetricSender.MAX_LINES_PER_MESSAGE, receivedLines.size());
+			assertTrue(requests.get() >= 5);
+		} finally {
+			mintMetricSender.destroy();
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testBlockWhenFullDoesNotDropMessages() throws Exception {
+		final AtomicLong receivedLines = new AtomicLong();
+		final AtomicLong receivedBytes = new AtomicLong();
+		final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/v2/metrics/ingest", exchange -> {
+			final String body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+			if (!body.isEmpty()) {
+				receivedLines.addAndGet(body.split("\\R").length);
+				receivedBytes.addAndGet(body.length());
+			}
+			exchange.sendResponseHeaders(202, -1);
+			exchange.close();
+		});
+		server.start();
+		try {
+			mintMetricSender.setMaxInFlightRequests(1);
+			mintMetricSender.setBlockWhenFull(true);
+			mintMetricSender.setup("test", "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/metrics/ingest",
+					"token");
+			// a single batch, which is larger than the pending messages limit
+			long bytes = 0;
+			int lines = 0;
+			while (bytes <= MintMetricSender.MAX_PENDING_BYTES + MintMetricSender.MAX_MESSAGE_SIZE_BYTES) {
+				final MintMetricsLine line = createLine("metric-key-" + lines, lines, 50, "dimKey", "dimValue");
+				bytes += line.printMessage(false).length();
+				lines++;
+				mintMetricSender.addMetric(line);
+			}
+			mintMetricSender.writeAndSendMetrics();
+			assertTrue(mintMetricSender.awaitCompletion(60, TimeUnit.SECONDS));
+			assertEquals(0, mintMetricSender.getFailedRequests());
+			assertEquals(lines, receivedLines.get());
+			assertTrue(receivedBytes.get() > MintMetricSender.MAX_PENDING_BYTES);
+		} finally {
+			mintMetricSender.destroy();
+			server.stop(0);
+		}
+	}
+
 	private MintMetricsLine createLine(String metricKey, int metricValue, int nrDimensions, String dimensionKeyPrefix,
 			String dimensionValuePrefix) {
 		final MintMetricsLine metricsLine = new MintMetricsLine(metricKey);
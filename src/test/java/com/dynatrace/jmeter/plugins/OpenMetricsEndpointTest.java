@@ -0,0 +1,93 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpenMetricsEndpointTest {
+	private OpenMetricsEndpoint endpoint;
+
+	@Before
+	public void setup() throws IOException {
+		endpoint = new OpenMetricsEndpoint("test", "127.0.0.1", 0);
+		endpoint.start();
+	}
+
+	@After
+	public void tearDown() {
+		endpoint.stop();
+	}
+
+	@Test
+	public void testEmptySnapshot() throws IOException {
+		assertEquals("# EOF\n", scrape());
+	}
+
+	@Test
+	public void testListensOnLoopbackByDefault() throws IOException {
+		final OpenMetricsEndpoint defaultEndpoint = new OpenMetricsEndpoint("test", "", 0);
+		try {
+			assertTrue(defaultEndpoint.getAddress().getAddress().isLoopbackAddress());
+		} finally {
+			defaultEndpoint.stop();
+		}
+	}
+
+	@Test
+	public void testRenderChangedTransactions() throws IOException {
+		final TransactionMetric login = new TransactionMetric();
+		login.add(100, 1, 0, 1, 10, 200, 1);
+		login.add(300, 0, 1, 2, 10, 200, 1);
+		final TransactionMetric checkout = new TransactionMetric();
+		checkout.add(50, 1, 0, 1, 10, 200, 1);
+		final Map<String, TransactionMetric> changed = new HashMap<>();
+		changed.put("login", login);
+		changed.put("check \"out\"", checkout);
+		endpoint.publish(changed, Collections.singletonMap("jmeter.usermetrics.startedthreads", 5.0));
+
+		final String body = scrape();
+		assertTrue(body.startsWith("# TYPE jmeter_transaction_requests counter\n"));
+		assertTrue(body.contains("jmeter_transaction_requests_total{transaction=\"login\"} 2\n"));
+		assertTrue(body.contains("jmeter_transaction_errors_total{transaction=\"check \\\"out\\\"\"} 0\n"));
+		assertTrue(body.contains("jmeter_transaction_duration_milliseconds{transaction=\"login\",quantile=\"0.99\"} 300\n"));
+		assertTrue(body.contains("jmeter_transaction_duration_milliseconds_sum{transaction=\"login\"} 400\n"));
+		assertTrue(body.contains("# TYPE jmeter_usermetrics_startedthreads gauge\njmeter_usermetrics_startedthreads 5\n"));
+		assertTrue(body.endsWith("# EOF\n"));
+		// every family is rendered once, with the transactions grouped below it
+		assertEquals(body.indexOf("# TYPE jmeter_transaction_requests "), body.lastIndexOf("# TYPE jmeter_transaction_requests "));
+		assertTrue(body.indexOf("jmeter_transaction_requests_total{transaction=\"login\"}")
+				< body.indexOf("# TYPE jmeter_transaction_errors "));
+		assertEquals(body, scrape());
+
+		// unchanged transactions keep their lines
+		checkout.add(70, 1, 0, 1, 10, 200, 1);
+		endpoint.publish(Collections.singletonMap("check \"out\"", checkout), Collections.emptyMap());
+		final String next = scrape();
+		assertTrue(next.contains("jmeter_transaction_requests_total{transaction=\"login\"} 2\n"));
+		assertTrue(next.contains("jmeter_transaction_requests_total{transaction=\"check \\\"out\\\"\"} 2\n"));
+	}
+
+	private String scrape() throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(
+				"http://127.0.0.1:" + endpoint.getPort() + "/metrics").openConnection();
+		try {
+			assertEquals(200, connection.getResponseCode());
+			assertTrue(connection.getContentType().startsWith("application/openmetrics-text"));
+			return IOUtils.toString(connection.getInputStream(), StandardCharsets.UTF_8);
+		} finally {
+			connection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.dynatrace.jmeter.plugins;
+
+import com.dynatrace.mint.MintMetricsLine;
+import com.dynatrace.mint.SchemalessMetricSanitizer;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the size and CPU time of the MINT line protocol and the OTLP protobuf encoding of one send interval, and
+ * sends both payloads to a local stub receiver.
+ * <p>
+ * Usage: {@code OtlpEncoderBenchmark [transactions 200] [buckets 6] [iterations 500]}
+ */
+public class OtlpEncoderBenchmark {
+	private static final long TIMESTAMP = 1_600_000_000_000L;
+	private static final long BUCKET_MILLIS = 10_000;
+
+	public static void main(String[] args) throws Exception {
+		final int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		final int buckets = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+		final Random random = new Random(42);
+		final String[] labels = new String[transactions];
+		final TransactionMetric[][] metrics = new TransactionMetric[buckets][transactions];
+		for (int t = 0; t < transactions; t++) {
+			labels[t] = "HTTP Request " + t + " /shop/checkout";
+			for (int b = 0; b < buckets; b++) {
+				metrics[b][t] = new TransactionMetric();
+				for (int i = 0; i < 100; i++) {
+					final long elapsed = (long) Math.exp(4 + random.nextGaussian());
+					metrics[b][t].add(elapsed, i % 20 == 0 ? 0 : 1, i % 20 == 0 ? 1 : 0, 1, 300, 5000, 1);
+				}
+			}
+		}
+		final TransactionLines transactionLines = new TransactionLines(
+				Collections.singletonMap("dt.entity.service", "SERVICE-0123456789ABCDEF"));
+		final OtlpMetricEncoder encoder = new OtlpMetricEncoder(Collections.singletonMap("testName", "benchmark"),
+				Collections.singletonMap("dt.entity.service", "SERVICE-0123456789ABCDEF"), BUCKET_MILLIS);
+
+		final Supplier<byte[]> text = () -> {
+			final List<MintMetricsLine> lines = new ArrayList<>();
+			for (int b = 0; b < buckets; b++) {
+				for (int t = 0; t < transactions; t++) {
+					transactionLines.addMetrics(SchemalessMetricSanitizer.sanitizeDimensionValue(labels[t]), metrics[b][t],
+							TIMESTAMP + b * BUCKET_MILLIS, lines::add);
+				}
+			}
+			final StringBuilder message = new StringBuilder();
+			for (MintMetricsLine line : lines) {
+				message.append(line.printMessage(false)).append('\n');
+			}
+			return message.toString().getBytes(StandardCharsets.UTF_8);
+		};
+		final Supplier<byte[]> otlp = () -> {
+			for (int b = 0; b < buckets; b++) {
+				for (int t = 0; t < transactions; t++) {
+					encoder.add(labels[t], metrics[b][t], TIMESTAMP + b * BUCKET_MILLIS);
+				}
+			}
+			return encoder.encode().toByteArray();
+		};
+
+		System.out.printf("%d transactions x %d buckets, %d iterations%n", transactions, buckets, iterations);
+		final byte[] textPayload = measure("MINT lines", text, iterations);
+		final byte[] otlpPayload = measure("OTLP protobuf", otlp, iterations);
+
+		final AtomicLong receivedBytes = new AtomicLong();
+		final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			receivedBytes.addAndGet(IOUtils.toByteArray(exchange.getRequestBody()).length);
+			exchange.sendResponseHeaders(202, -1);
+			exchange.close();
+		});
+		server.start();
+		try {
+			final String base = "http://127.0.0.1:" + server.getAddress().getPort();
+			post(base + "/api/v2/metrics/ingest", "text/plain; charset=utf-8", textPayload);
+			System.out.printf("stub received %d bytes of MINT lines%n", receivedBytes.getAndSet(0));
+			post(base + "/v1/metrics", "application/x-protobuf", otlpPayload);
+			System.out.printf("stub received %d bytes of OTLP protobuf%n", receivedBytes.getAndSet(0));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private static byte[] measure(String name, Supplier<byte[]> encoding, int iterations) throws IOException {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		byte[] payload = null;
+		// warm up
+		for (int i = 0; i < iterations / 5 + 1; i++) {
+			payload = encoding.get();
+		}
+		final long cpuStart = threads.getCurrentThreadCpuTime();
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			payload = encoding.get();
+		}
+		final double cpuMillis = (threads.getCurrentThreadCpuTime() - cpuStart) / 1e6 / iterations;
+		final double wallMillis = (System.nanoTime() - start) / 1e6 / iterations;
+		System.out.printf("%-14s %9d bytes, %8d bytes gzip, %8.3f ms cpu, %8.3f ms wall per interval%n", name,
+				payload.length, gzip(payload).length, cpuMillis, wallMillis);
+		return payload;
+	}
+
+	private static byte[] gzip(byte[] payload) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(payload);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void post(String url, String contentType, byte[] payload) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", contentType);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(payload);
+		}
+		if (connection.getResponseCode() != 202) {
+			throw new IOException("Unexpected response code " + connection.getResponseCode());
+		}
+		connection.disconnect();
+	}
+}
@@ -0,0 +1,152 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class OtlpMetricEncoderTest {
+	private static final long TIMESTAMP = 1_600_000_010_000L;
+
+	@Test
+	public void testNestedMessageWithLongLength() {
+		final ProtobufWriter writer = new ProtobufWriter(16);
+		final String value = String.join("", Collections.nCopies(100, "a\u00e4\u20ac\ud83d\ude00"));
+		final int message = writer.beginMessage(1);
+		writer.writeString(2, value);
+		writer.endMessage(message);
+		writer.writeVarint(3, 300);
+
+		final Map<Integer, List<Object>> fields = decode(writer.toByteArray());
+		assertEquals(300L, fields.get(3).get(0));
+		assertEquals(value, string(decode((byte[]) fields.get(1).get(0)).get(2).get(0)));
+	}
+
+	@Test
+	public void testEncodeRequest() {
+		final Map<String, String> resourceAttributes = new HashMap<>();
+		resourceAttributes.put("testName", "load test");
+		final OtlpMetricEncoder encoder = new OtlpMetricEncoder(resourceAttributes,
+				Collections.singletonMap("dt.entity.service", "SERVICE-1"), 10_000);
+		final TransactionMetric checkout = new TransactionMetric();
+		checkout.add(5, 1, 0, 1, 10, 100, 2);
+		checkout.add(40, 0, 1, 1, 10, 100, 1);
+		checkout.add(1000, 1, 0, 1, 10, 100, 1);
+		final TransactionMetric login = new TransactionMetric();
+		login.add(0, 1, 0, 1, 10, 100, 1);
+		encoder.add("k\u00e4se", checkout, TIMESTAMP);
+		encoder.add("login", login, TIMESTAMP);
+
+		final Map<Integer, List<Object>> resourceMetrics = message(decode(encoder.encode().toByteArray()), 1);
+		final Map<Integer, List<Object>> resource = message(resourceMetrics, 1);
+		assertEquals("testName", string(message(resource, 1).get(1).get(0)));
+		assertEquals("load test", string(message(message(resource, 1), 2).get(1).get(0)));
+		assertEquals("dt.entity.service", string(decode((byte[]) resource.get(1).get(1)).get(1).get(0)));
+
+		final List<Object> metrics = message(resourceMetrics, 2).get(2);
+		assertEquals(7, metrics.size());
+		final Map<Integer, List<Object>> count = decode((byte[]) metrics.get(0));
+		assertEquals("jmeter.usermetrics.transaction.count", string(count.get(1).get(0)));
+		final Map<Integer, List<Object>> sum = message(count, 7);
+		assertEquals(1L, sum.get(2).get(0));
+		assertEquals(2, sum.get(1).size());
+		final Map<Integer, List<Object>> countPoint = decode((byte[]) sum.get(1).get(0));
+		assertEquals(4L, countPoint.get(6).get(0));
+		assertEquals((TIMESTAMP - 10_000) * 1_000_000, countPoint.get(2).get(0));
+		assertEquals(TIMESTAMP * 1_000_000, countPoint.get(3).get(0));
+		assertEquals("transaction", string(decode((byte[]) countPoint.get(7).get(0)).get(1).get(0)));
+		assertEquals("k\u00e4se", string(message(decode((byte[]) countPoint.get(7).get(0)), 2).get(1).get(0)));
+		assertEquals(1, countPoint.get(7).size());
+
+		final Map<Integer, List<Object>> duration = decode((byte[]) metrics.get(6));
+		assertEquals("jmeter.usermetrics.transaction.duration", string(duration.get(1).get(0)));
+		final Map<Integer, List<Object>> histogramPoint = decode((byte[]) message(duration, 9).get(1).get(0));
+		assertEquals(4L, histogramPoint.get(4).get(0));
+		assertEquals(1050.0, Double.longBitsToDouble((Long) histogramPoint.get(5).get(0)), 0);
+		assertArrayEquals(new long[] { 0, 2, 0, 1, 0, 1, 0 }, packedFixed64(histogramPoint.get(6).get(0)));
+		assertArrayEquals(new long[] { 4, 5, 39, 43, 959, 1023 }, packedDoubles(histogramPoint.get(7).get(0)));
+		assertEquals(5.0, Double.longBitsToDouble((Long) histogramPoint.get(11).get(0)), 0);
+		assertEquals(1000.0, Double.longBitsToDouble((Long) histogramPoint.get(12).get(0)), 0);
+
+		final Map<Integer, List<Object>> loginPoint = decode((byte[]) message(duration, 9).get(1).get(1));
+		assertArrayEquals(new long[] { 1, 0 }, packedFixed64(loginPoint.get(6).get(0)));
+		assertArrayEquals(new long[] { 0 }, packedDoubles(loginPoint.get(7).get(0)));
+
+		// the data points are removed after encoding
+		assertEquals(true, encoder.isEmpty());
+	}
+
+	private static Map<Integer, List<Object>> message(Map<Integer, List<Object>> fields, int field) {
+		return decode((byte[]) fields.get(field).get(0));
+	}
+
+	private static String string(Object value) {
+		return new String((byte[]) value, StandardCharsets.UTF_8);
+	}
+
+	private static long[] packedFixed64(Object value) {
+		final ByteBuffer buffer = ByteBuffer.wrap((byte[]) value).order(ByteOrder.LITTLE_ENDIAN);
+		final long[] values = new long[buffer.remaining() / 8];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = buffer.getLong();
+		}
+		return values;
+	}
+
+	private static long[] packedDoubles(Object value) {
+		final long[] values = packedFixed64(value);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) Double.longBitsToDouble(values[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Decodes the fields of a message, varint and fixed64 values as Long, length delimited values as byte[].
+	 */
+	private static Map<Integer, List<Object>> decode(byte[] bytes) {
+		final Map<Integer, List<Object>> fields = new HashMap<>();
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			final long tag = readVarint(buffer);
+			final Object value;
+			switch ((int) (tag & 7)) {
+				case 0:
+					value = readVarint(buffer);
+					break;
+				case 1:
+					value = buffer.getLong();
+					break;
+				case 2:
+					final byte[] content = new byte[(int) readVarint(buffer)];
+					buffer.get(content);
+					value = content;
+					break;
+				default:
+					throw new IllegalStateException("Unexpected wire type in tag " + tag);
+			}
+			fields.computeIfAbsent((int) (tag >>> 3), k -> new ArrayList<>()).add(value);
+		}
+		return fields;
+	}
+
+	private static long readVarint(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			final byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+}
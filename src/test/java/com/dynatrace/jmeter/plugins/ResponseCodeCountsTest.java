@@ -0,0 +1,85 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResponseCodeCountsTest {
+
+	@Test
+	public void testParseCode() {
+		assertEquals(200, ResponseCodeCounts.parseCode("200"));
+		assertEquals(0, ResponseCodeCounts.parseCode("0"));
+		assertEquals(ResponseCodeCounts.NON_HTTP, ResponseCodeCounts.parseCode("Non HTTP response code: java.net.SocketException"));
+		assertEquals(ResponseCodeCounts.NON_HTTP, ResponseCodeCounts.parseCode("2xx"));
+		assertEquals(-1, ResponseCodeCounts.parseCode(""));
+		assertEquals(-1, ResponseCodeCounts.parseCode(null));
+	}
+
+	@Test
+	public void testCountCodes() {
+		final ResponseCodeCounts counts = new ResponseCodeCounts();
+		counts.addCode("200", 3);
+		counts.addCode("503", 1);
+		counts.addCode("200", 2);
+		counts.addCode("", 1);
+		counts.addCode("Non HTTP response code: java.net.SocketTimeoutException", 1);
+		assertEquals(5, counts.getCount(200));
+		assertEquals(1, counts.getCount(503));
+		assertEquals(1, counts.getCount(ResponseCodeCounts.NON_HTTP));
+		assertEquals(0, counts.getCount(404));
+		assertEquals("non_http", ResponseCodeCounts.getCodeName(ResponseCodeCounts.NON_HTTP));
+		assertEquals("503", ResponseCodeCounts.getCodeName(503));
+	}
+
+	@Test
+	public void testNumberOfCodesIsLimited() {
+		final ResponseCodeCounts counts = new ResponseCodeCounts();
+		for (int code = 100; code < 100 + ResponseCodeCounts.MAX_CODES + 10; code++) {
+			counts.addCode(String.valueOf(code), 1);
+		}
+		counts.addCode("200", 1);
+		counts.addCode("100", 1);
+
+		final long[] total = new long[2];
+		counts.forEachCode((code, count) -> {
+			total[0]++;
+			total[1] += count;
+		});
+		assertEquals(ResponseCodeCounts.MAX_CODES + 1, total[0]);
+		assertEquals(ResponseCodeCounts.MAX_CODES + 12, total[1]);
+		assertEquals(2, counts.getCount(100));
+		assertEquals(11, counts.getCount(ResponseCodeCounts.OTHER_CODES));
+	}
+
+	@Test
+	public void testMerge() {
+		final ResponseCodeCounts counts = new ResponseCodeCounts();
+		counts.addCode("200", 1);
+		counts.addFailure(ResponseCodeCounts.TIMEOUT, 2);
+		final ResponseCodeCounts total = new ResponseCodeCounts();
+		total.addCode("404", 1);
+		total.merge(counts);
+		total.merge(counts);
+		assertEquals(2, total.getCount(200));
+		assertEquals(1, total.getCount(404));
+		assertEquals(4, total.getFailures(ResponseCodeCounts.TIMEOUT));
+	}
+
+	@Test
+	public void testFailureClass() {
+		assertEquals(ResponseCodeCounts.SERVER_ERROR, ResponseCodeCounts.getFailureClass("503", true));
+		assertEquals(ResponseCodeCounts.CLIENT_ERROR, ResponseCodeCounts.getFailureClass("404", false));
+		assertEquals(ResponseCodeCounts.ASSERTION, ResponseCodeCounts.getFailureClass("200", true));
+		assertEquals(ResponseCodeCounts.OTHER_FAILURE, ResponseCodeCounts.getFailureClass("200", false));
+		assertEquals(ResponseCodeCounts.TIMEOUT,
+				ResponseCodeCounts.getFailureClass("Non HTTP response code: java.net.SocketTimeoutException", false));
+		assertEquals(ResponseCodeCounts.TIMEOUT,
+				ResponseCodeCounts.getFailureClass("Non HTTP response code: org.apache.http.conn.ConnectTimeoutException", false));
+		assertEquals(ResponseCodeCounts.CONNECTION,
+				ResponseCodeCounts.getFailureClass("Non HTTP response code: java.net.UnknownHostException", false));
+		assertEquals(ResponseCodeCounts.CONNECTION,
+				ResponseCodeCounts.getFailureClass("Non HTTP response code: org.apache.http.NoHttpResponseException", false));
+		assertEquals(ResponseCodeCounts.OTHER_FAILURE, ResponseCodeCounts.getFailureClass(null, false));
+	}
+}
@@ -0,0 +1,59 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingControllerTest {
+
+	@Test
+	public void testSamplingIsDisabled() {
+		final SamplingController controller = new SamplingController("test", 0);
+		controller.recordBatch(100_000, 1_000);
+		assertEquals(1, controller.getSamplingFactor());
+	}
+
+	@Test
+	public void testSamplingAdaptsToBatchSize() {
+		final SamplingController controller = new SamplingController("test", 1000);
+		controller.recordBatch(500, 1_000);
+		assertEquals(1, controller.getSamplingFactor());
+
+		controller.recordBatch(2000, 1_000);
+		controller.recordBatch(2000, 1_000);
+		assertEquals(4, controller.getSamplingFactor());
+		int processed = 0;
+		for (int i = 0; i < 100; i++) {
+			if (controller.shouldProcess()) {
+				processed++;
+			}
+		}
+		assertEquals(25, processed);
+
+		controller.recordBatch(500, 1_000);
+		assertEquals(4, controller.getSamplingFactor());
+		controller.recordBatch(100, 1_000);
+		assertEquals(2, controller.getSamplingFactor());
+	}
+
+	@Test
+	public void testCollect() {
+		final SamplingController controller = new SamplingController("test", 1000);
+		controller.recordBatch(2000, 2_000_000);
+		controller.recordBatch(1000, 4_000_000);
+
+		final Map<String, Double> values = new HashMap<>();
+		controller.collect(values::put);
+		assertEquals(2000, values.get("jmeter.listener.batchsize"), 0.0);
+		assertEquals(3, values.get("jmeter.listener.batchtime"), 0.0);
+		assertEquals(0.5, values.get("jmeter.listener.samplingrate"), 0.0);
+		assertTrue(values.get("jmeter.listener.samplerate") > 0);
+
+		controller.collect(values::put);
+		assertEquals(0, values.get("jmeter.listener.batchsize"), 0.0);
+	}
+}
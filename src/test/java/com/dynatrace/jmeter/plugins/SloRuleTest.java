@@ -0,0 +1,90 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SloRuleTest {
+
+	@Test
+	public void testParseRules() {
+		final List<SloRule> rules = SloRule.parse("p95(label~\"checkout.*\") > 800ms for 3 intervals; error rate > 5%;;mean<=1.5s");
+		assertEquals(3, rules.size());
+		assertEquals("p95(label~\"checkout.*\") > 800ms for 3 intervals", rules.get(0).getDefinition());
+		assertEquals("error rate > 5%", rules.get(1).getDefinition());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidRule() {
+		SloRule.parse("p95 is too high");
+	}
+
+	@Test
+	public void testParseRejectsUnitNotFittingTheMetric() {
+		for (String rule : new String[] {"count > 5s", "count > 5%", "error rate > 5ms", "error rate > 1s", "p95 > 5%", "mean > 5%"}) {
+			try {
+				SloRule.parse(rule);
+				fail("Expected the unit of '" + rule + "' to be rejected");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals(3, SloRule.parse("count > 5; error rate > 5%; p99 > 2s").size());
+	}
+
+	@Test
+	public void testPercentileRuleWithLabelAndIntervals() {
+		final SloRule rule = SloRule.parse("p95(label~\"checkout.*\") > 800ms for 2 intervals").get(0);
+
+		rule.add("checkout-pay", createMetric(1000, 1000));
+		rule.add("login", createMetric(10, 10));
+		assertFalse(rule.evaluate());
+		assertEquals(1000, rule.getLastValue(), 100);
+
+		rule.add("checkout-pay", createMetric(900, 900));
+		assertTrue(rule.evaluate());
+
+		rule.add("checkout-pay", createMetric(100, 100));
+		assertFalse(rule.evaluate());
+	}
+
+	@Test
+	public void testIntervalWithoutSamplesIsNotViolated() {
+		final SloRule rule = SloRule.parse("max > 1s").get(0);
+		rule.add("login", createMetric(2000));
+		assertTrue(rule.evaluate());
+		assertFalse(rule.evaluate());
+	}
+
+	@Test
+	public void testErrorRateRule() {
+		final SloRule rule = SloRule.parse("error rate > 5%").get(0);
+		final TransactionMetric metric = createMetric(10, 10, 10, 10, 10, 10, 10, 10, 10);
+		metric.add(createSample(10, false));
+		rule.add("login", metric);
+		assertTrue(rule.evaluate());
+		assertEquals(10.0, rule.getLastValue(), 0.0);
+	}
+
+	private TransactionMetric createMetric(long... elapsedTimes) {
+		final TransactionMetric metric = new TransactionMetric();
+		for (long elapsed : elapsedTimes) {
+			metric.add(createSample(elapsed, true));
+		}
+		return metric;
+	}
+
+	private SampleResult createSample(long elapsed, boolean successful) {
+		final SampleResult result = new SampleResult(System.currentTimeMillis(), elapsed);
+		result.setSuccessful(successful);
+		result.setSampleCount(1);
+		result.setErrorCount(successful ? 0 : 1);
+		return result;
+	}
+}
@@ -0,0 +1,123 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubResultAggregatorTest {
+	private static final long BUCKET_MILLIS = 10_000;
+	private static final long START = 1_600_000_000_000L;
+	private TimeBucketRing ring;
+
+	@Before
+	public void setup() {
+		ring = new TimeBucketRing(BUCKET_MILLIS, 4, START);
+	}
+
+	@Test
+	public void testChildrenAreAggregatedWithTheirPath() {
+		final SubResultAggregator aggregator = new SubResultAggregator(1);
+		final SampleResult parent = createSample("Parent", 300);
+		final SampleResult child = createSample("Child", 100);
+		addChild(child, createSample("GrandChild", 50));
+		addChild(parent, child);
+		addChild(parent, createSample("Child", 200));
+
+		aggregator.add(parent, ring, 1);
+
+		final Map<String, TransactionMetric> metrics = flush();
+		assertEquals(1, metrics.size());
+		assertEquals(2, metrics.get("Parent > Child").getTotal());
+		assertEquals(150.0, metrics.get("Parent > Child").getMean(), 0.0);
+		assertEquals("Parent", metrics.get("Parent > Child").getParent());
+	}
+
+	@Test
+	public void testGrandChildrenAreAggregatedUpToTheMaximumDepth() {
+		final SubResultAggregator aggregator = new SubResultAggregator(2);
+		final SampleResult parent = createSample("Parent", 300);
+		final SampleResult child = createSample("Child", 100);
+		final SampleResult grandChild = createSample("GrandChild", 50);
+		addChild(grandChild, createSample("Resource", 10));
+		addChild(child, grandChild);
+		addChild(parent, child);
+
+		aggregator.add(parent, ring, 3);
+
+		final Map<String, TransactionMetric> metrics = flush();
+		assertEquals(2, metrics.size());
+		assertEquals(3, metrics.get("Parent > Child").getTotal());
+		assertEquals(3, metrics.get("Parent > Child > GrandChild").getTotal());
+		assertEquals("Parent", metrics.get("Parent > Child").getParent());
+		assertEquals("Parent > Child", metrics.get("Parent > Child > GrandChild").getParent());
+	}
+
+	@Test
+	public void testNumberOfChildrenIsLimited() {
+		final SubResultAggregator aggregator = new SubResultAggregator(1);
+		final SampleResult parent = createSample("Parent", 300);
+		for (int i = 0; i < 150; i++) {
+			addChild(parent, createSample("Child" + i, 10));
+		}
+
+		aggregator.add(parent, ring, 1);
+
+		final Map<String, TransactionMetric> metrics = flush();
+		assertEquals(100 + 1, metrics.size());
+		assertEquals(1, metrics.get("Parent > Child0").getTotal());
+		assertEquals(50, metrics.get("Parent > other").getTotal());
+		assertEquals("Parent", metrics.get("Parent > other").getParent());
+	}
+
+	@Test
+	public void testForget() {
+		final SubResultAggregator aggregator = new SubResultAggregator(1);
+		final SampleResult parent = createSample("Parent", 300);
+		addChild(parent, createSample("Child", 100));
+		aggregator.add(parent, ring, 1);
+
+		// the flush thread forgets the path before the aggregate of the path has been flushed
+		aggregator.forget("Parent > Child");
+		aggregator.add(parent, ring, 1);
+
+		final Map<String, TransactionMetric> metrics = flush();
+		assertEquals(2, metrics.get("Parent > Child").getTotal());
+		assertEquals("Parent", metrics.get("Parent > Child").getParent());
+	}
+
+	@Test
+	public void testResultsWithoutSubResults() {
+		final SubResultAggregator aggregator = new SubResultAggregator(2);
+
+		aggregator.add(createSample("Parent", 300), ring, 1);
+
+		assertTrue(flush().isEmpty());
+	}
+
+	private Map<String, TransactionMetric> flush() {
+		final List<TimeBucketRing.TimeBucket> buckets = ring.flush(START + 100_000, true);
+		return buckets.isEmpty() ? Collections.emptyMap() : buckets.get(0).getMetrics();
+	}
+
+	private static void addChild(SampleResult parent, SampleResult child) {
+		// JMeter renames the sub-results to "<parent>-<index>" unless subresults.disable_renaming is set
+		final String label = child.getSampleLabel();
+		parent.addRawSubResult(child);
+		child.setSampleLabel(label);
+	}
+
+	private SampleResult createSample(String label, long elapsed) {
+		final SampleResult result = new SampleResult(START + 5_000, elapsed);
+		result.setSampleLabel(label);
+		result.setSuccessful(true);
+		result.setSampleCount(1);
+		return result;
+	}
+}
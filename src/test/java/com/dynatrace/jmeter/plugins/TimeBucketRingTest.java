@@ -0,0 +1,102 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeBucketRingTest {
+	private static final long BUCKET_MILLIS = 10_000;
+	private static final long START = 1_600_000_000_000L;
+	private TimeBucketRing ring;
+
+	@Before
+	public void setup() {
+		ring = new TimeBucketRing(BUCKET_MILLIS, 4, START);
+	}
+
+	@Test
+	public void testFlushEmptyRing() {
+		assertEquals(0, ring.flush(START + 100_000, false).size());
+	}
+
+	@Test
+	public void testSamplesAreAddedToTheBucketOfTheirEndTime() {
+		ring.add("label", createSample(START + 1_000, 100), 1);
+		ring.add("label", createSample(START + 12_000, 200), 1);
+		ring.add("label", createSample(START + 15_000, 400), 1);
+
+		final List<TimeBucketRing.TimeBucket> buckets = ring.flush(START + 30_000, false);
+		assertEquals(2, buckets.size());
+		assertEquals(START + 10_000, buckets.get(0).getTimestamp());
+		assertEquals(1, buckets.get(0).getMetrics().get("label").getTotal());
+		assertEquals(START + 20_000, buckets.get(1).getTimestamp());
+		assertEquals(2, buckets.get(1).getMetrics().get("label").getTotal());
+		assertEquals(300.0, buckets.get(1).getMetrics().get("label").getMean(), 0.0);
+	}
+
+	@Test
+	public void testIncompleteBucketsAreNotFlushed() {
+		ring.add("label", createSample(START + 12_000, 100), 1);
+
+		assertEquals(0, ring.flush(START + 15_000, false).size());
+		// the bucket is kept open for one more bucket after its end
+		assertEquals(0, ring.flush(START + 25_000, false).size());
+		assertEquals(1, ring.flush(START + 30_000, false).size());
+	}
+
+	@Test
+	public void testLateSamplesAreAddedToTheirBucket() {
+		ring.add("label", createSample(START + 22_000, 100), 1);
+		ring.add("label", createSample(START + 5_000, 100), 1);
+
+		final List<TimeBucketRing.TimeBucket> buckets = ring.flush(START + 40_000, false);
+		assertEquals(2, buckets.size());
+		assertEquals(START + 10_000, buckets.get(0).getTimestamp());
+		assertEquals(START + 30_000, buckets.get(1).getTimestamp());
+	}
+
+	@Test
+	public void testSamplesArrivingAfterTheFlushOfTheNextBucketAreAddedToTheirBucket() {
+		ring.add("label", createSample(START + 5_000, 100), 1);
+		assertEquals(0, ring.flush(START + 10_000, false).size());
+		assertEquals(0, ring.flush(START + 15_000, false).size());
+		ring.add("label", createSample(START + 6_000, 100), 1);
+
+		final List<TimeBucketRing.TimeBucket> buckets = ring.flush(START + 20_000, false);
+		assertEquals(1, buckets.size());
+		assertEquals(START + 10_000, buckets.get(0).getTimestamp());
+		assertEquals(2, buckets.get(0).getMetrics().get("label").getTotal());
+	}
+
+	@Test
+	public void testSamplesOfFlushedBucketsAreAddedToTheFirstOpenBucket() {
+		ring.add("label", createSample(START + 5_000, 100), 1);
+		assertEquals(1, ring.flush(START + 20_000, false).size());
+		ring.add("label", createSample(START + 6_000, 100), 1);
+
+		final List<TimeBucketRing.TimeBucket> buckets = ring.flush(START + 30_000, false);
+		assertEquals(1, buckets.size());
+		assertEquals(START + 20_000, buckets.get(0).getTimestamp());
+	}
+
+	@Test
+	public void testFlushAll() {
+		ring.add("label1", createSample(START + 5_000, 100), 1);
+		ring.add("label2", createSample(START + 35_000, 100), 1);
+
+		final List<TimeBucketRing.TimeBucket> buckets = ring.flush(START + 10_000, true);
+		assertEquals(2, buckets.size());
+		assertEquals(0, ring.flush(START + 100_000, true).size());
+	}
+
+	private SampleResult createSample(long endTime, long elapsed) {
+		final SampleResult result = new SampleResult(endTime, elapsed);
+		result.setSuccessful(true);
+		result.setSampleCount(1);
+		return result;
+	}
+}
@@ -0,0 +1,73 @@
+package com.dynatrace.jmeter.plugins;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionMetricTest {
+
+	@Test
+	public void testPhases() {
+		final TransactionMetric metric = new TransactionMetric();
+		metric.add(createSample(100, 20, 60));
+		metric.add(createSample(300, 0, 100));
+		assertTrue(metric.hasPhases());
+		assertEquals(20, metric.getPhaseTimes(0).getPercentile(100), 0.0);
+		assertEquals(0, metric.getPhaseTimes(0).getPercentile(50), 0.0);
+		assertEquals(60, metric.getPhaseTimes(1).getPercentile(50), 1.0);
+		assertEquals(200, metric.getPhaseTimes(2).getPercentile(100), 0.0);
+		assertEquals(2, metric.getPhaseTimes(2).getTotalCount());
+
+		final TransactionMetric total = new TransactionMetric();
+		total.merge(metric);
+		total.merge(metric);
+		assertEquals(4, total.getPhaseTimes(1).getTotalCount());
+	}
+
+	@Test
+	public void testSamplesWithoutLatencyHaveNoPhases() {
+		final TransactionMetric metric = new TransactionMetric();
+		metric.add(createSample(100, 0, 0));
+		assertFalse(metric.hasPhases());
+		assertEquals(1, metric.getTotal());
+	}
+
+	@Test
+	public void testResponseCodes() {
+		final TransactionMetric metric = new TransactionMetric();
+		final SampleResult ok = createSample(100, 0, 50);
+		ok.setResponseCode("200");
+		metric.add(ok, 2);
+		final SampleResult unavailable = createSample(100, 0, 50);
+		unavailable.setResponseCode("503");
+		unavailable.setSuccessful(false);
+		metric.add(unavailable, 1);
+		final SampleResult assertionFailed = createSample(100, 0, 50);
+		assertionFailed.setResponseCode("200");
+		assertionFailed.setSuccessful(false);
+		final AssertionResult assertion = new AssertionResult("assertion");
+		assertion.setFailure(true);
+		assertionFailed.addAssertionResult(assertion);
+		metric.add(assertionFailed, 1);
+
+		final ResponseCodeCounts responseCodes = metric.getResponseCodes();
+		assertEquals(3, responseCodes.getCount(200));
+		assertEquals(1, responseCodes.getCount(503));
+		assertEquals(1, responseCodes.getFailures(ResponseCodeCounts.SERVER_ERROR));
+		assertEquals(1, responseCodes.getFailures(ResponseCodeCounts.ASSERTION));
+		assertEquals(metric.getFailures(), responseCodes.getFailures(ResponseCodeCounts.SERVER_ERROR)
+				+ responseCodes.getFailures(ResponseCodeCounts.ASSERTION));
+	}
+
+	private SampleResult createSample(long elapsed, long connectTime, long latency) {
+		final SampleResult result = new SampleResult(System.currentTimeMillis(), elapsed);
+		result.setConnectTime(connectTime);
+		result.setLatency(latency);
+		result.setSuccessful(true);
+		return result;
+	}
+}
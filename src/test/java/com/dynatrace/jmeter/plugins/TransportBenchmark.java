@@ -0,0 +1,87 @@
+package com.dynatrace.jmeter.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the Apache HTTP/1.1 transport and the HTTP/2 transport by sending batches to a local {@link H2cStubServer}
+ * with a fixed response latency, limited to a number of requests in flight like the rate controller of the
+ * {@link MintMetricSender}. Prints the throughput, the connections opened by the transport and the CPU time of the
+ * JVM (transport and stub).
+ * <p>
+ * Usage: {@code TransportBenchmark [requests 1000] [batch bytes 100000] [latency ms 20] [in flight 10,50]}
+ */
+public class TransportBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		final int batchBytes = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+		final long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+		final int[] inFlightLimits = args.length > 3
+				? Arrays.stream(args[3].split(",")).mapToInt(Integer::parseInt).toArray() : new int[] { 10, 50 };
+
+		final byte[] batch = new byte[batchBytes];
+		Arrays.fill(batch, (byte) 'x');
+		System.out.printf("%d requests of %d bytes, %d ms stub latency%n", requests, batchBytes, latencyMillis);
+		for (int inFlight : inFlightLimits) {
+			for (String type : new String[] { MetricTransport.APACHE, MetricTransport.HTTP2 }) {
+				try (H2cStubServer server = new H2cStubServer(latencyMillis)) {
+					final MetricTransport transport = MetricTransport.create("benchmark", type, new URL(server.getUrl()),
+							"token", inFlight);
+					try {
+						// like the connection check of the listener, which also upgrades the HTTP/2 connection
+						transport.send(new byte[0], "text/plain").get(10, TimeUnit.SECONDS);
+						run(transport, batch, inFlight, requests / 5);
+						run(type + ", " + inFlight + " in flight", server, transport, batch, inFlight, requests);
+					} finally {
+						transport.close();
+					}
+				}
+			}
+		}
+	}
+
+	private static void run(String name, H2cStubServer server, MetricTransport transport, byte[] batch, int inFlight,
+			int requests) throws InterruptedException {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		final long cpuStart = getProcessCpuNanos();
+		final long start = System.nanoTime();
+		final int failures = run(transport, batch, inFlight, requests);
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		final double cpuMillis = (getProcessCpuNanos() - cpuStart) / 1e6;
+		System.out.printf("%-22s %-20s %8.0f requests/s, %7.1f MB/s, %3d connections, %d HTTP/2, %6.0f ms cpu, %d failed, %d threads%n",
+				name, transport.getClass().getSimpleName(), requests / seconds, requests * (double) batch.length / seconds / 1e6,
+				server.getAcceptedConnections(), server.getHttp2Connections(), cpuMillis, failures,
+				threads.getThreadCount());
+	}
+
+	/**
+	 * @return the number of failed requests
+	 */
+	private static int run(MetricTransport transport, byte[] batch, int inFlight, int requests)
+			throws InterruptedException {
+		final Semaphore permits = new Semaphore(inFlight);
+		final AtomicInteger failures = new AtomicInteger();
+		for (int i = 0; i < requests; i++) {
+			permits.acquire();
+			transport.send(batch, "text/plain; charset=UTF-8").whenComplete((response, ex) -> {
+				if (ex != null || response.getStatusCode() != 200) {
+					failures.incrementAndGet();
+				}
+				permits.release();
+			});
+		}
+		permits.acquire(inFlight);
+		return failures.get();
+	}
+
+	private static long getProcessCpuNanos() {
+		return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+				.getProcessCpuTime();
+	}
+}